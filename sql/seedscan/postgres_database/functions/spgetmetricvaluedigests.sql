@@ -0,0 +1,42 @@
+CREATE OR REPLACE FUNCTION public.spgetmetricvaluedigests(date, character varying, character varying)
+ RETURNS TABLE(metric character varying, location character varying, channel character varying, hash bytea)
+ LANGUAGE plpgsql
+ STABLE
+AS $function$
+DECLARE
+	nDate alias for $1;
+	networkName alias for $2;
+	stationName alias for $3;
+
+BEGIN
+--Every metric value digest stored for one station-day, so that the scanner
+--can compare all of its digests after a single round-trip
+	RETURN QUERY
+	SELECT 
+	  tblMetric.name,
+	  tblSensor.location,
+	  tblChannel.name,
+	  tblHash.hash
+	FROM 
+	  public.tblhash,
+	  public.tblmetricdata, 
+	  public.tblmetric, 
+	  public.tblchannel, 
+	  public.tblsensor, 
+	  public.tblstation, 
+	  public."tblGroup"
+	WHERE 
+	  --JOINS
+	  tblmetricdata."fkHashID" = tblHash."pkHashID" AND
+	  tblmetricdata.fkmetricid = tblmetric.pkmetricid AND
+	  tblmetricdata.fkchannelid = tblchannel.pkchannelid AND
+	  tblchannel.fksensorid = tblsensor.pksensorid AND
+	  tblsensor.fkstationid = tblstation.pkstationid AND
+	  tblstation.fknetworkid = "tblGroup".pkgroupid AND
+	  --Criteria
+	  "tblGroup".name = networkName AND
+	  tblStation.name = stationName AND
+	  tblMetricData.date = to_char(nDate, 'J')::INT;
+        
+    END;
+$function$
@@ -7,6 +7,7 @@ import org.apache.commons.math.linear.BlockRealMatrix;
 import ZS.Solve.LM;
 import asl.worker.Worker;
 import freq.Cmplx;
+import freq.FFT;
 
 /**
  * Locates the best estimate azimuth of the sensor supplying the north+east
@@ -338,8 +339,9 @@ public class InvertAzimuth
         double   curseriesMean   = 0.0;		
         int      numOfWins       = (int)Math.floor((double)timeseries.length/(double)256) - 1;
         double[] curseries       = new double[512];
-        float[]  curseriesPrefft = new float[512];
-        Cmplx[]  curseriesfft    = new Cmplx[512];
+        FFT      fft             = FFT.getInstance(512);
+        double[] curseriesfftRe  = new double[257];
+        double[] curseriesfftIm  = new double[257];
         double[] psd             = new double[512];
         double[] freq            = new double[512];
         double[] psdMic          = new double[119];
@@ -364,16 +366,17 @@ public class InvertAzimuth
             }
 
             curseries = taper(curseries);
-            for(int curind = 0; curind < 512; curind++){
-                curseriesPrefft[curind] = (float)curseries[curind];
-                if(debug){
-                    System.out.println("Prefft time series: " + curseriesPrefft[curind]);
+            if(debug){
+                for(int curind = 0; curind < 512; curind++){
+                    System.out.println("Prefft time series: " + curseries[curind]);
                 }
             }
 
-            curseriesfft = Cmplx.fft(curseriesPrefft);
+            // The spectrum of a real series is symmetric, so only the 257 non-negative frequencies are computed
+            fft.realForward(curseries, 512, curseriesfftRe, curseriesfftIm);
             for(int curind = 0; curind < 512; curind++){
-                psd[curind]= psd[curind] +  Math.pow(curseriesfft[curind].mag(),2);
+                int k = (curind <= 256) ? curind : 512 - curind;
+                psd[curind]= psd[curind] + curseriesfftRe[k]*curseriesfftRe[k] + curseriesfftIm[k]*curseriesfftIm[k];
             }
         }
 
@@ -425,7 +428,6 @@ public class InvertAzimuth
      */
     private double[] filterdata(double[] timeseries, double peakval, int sps)
     {
-        float[] timeseriesFilter = new float[timeseries.length];
         double[] timeseriesdouble = new double[timeseries.length];
         double fh=2.0*peakval;
         double fl=peakval/2.0;
@@ -436,17 +438,13 @@ public class InvertAzimuth
             fl = 1.0/18.0;
         }
 
-        for(int ind = 0; ind < timeseries.length; ind++){
-            timeseriesFilter[ind] = (float)timeseries[ind];
-        }
-
-        Cmplx[] timeseriesC = Cmplx.fft(timeseriesFilter);
-        timeseriesC = apply((double)sps, timeseriesC, fl,fh);
-        timeseriesFilter = Cmplx.fftInverse(timeseriesC, timeseries.length);
-
-        for(int ind = 0; ind < timeseries.length; ind++){
-            timeseriesdouble[ind] = (double)timeseriesFilter[ind];
-        }
+        // Only the nfft/2 + 1 non-negative frequencies of the (real) series are kept
+        FFT fft = FFT.getInstance(FFT.nextPowerOf2(timeseries.length));
+        double[] re = new double[fft.getSize()/2 + 1];
+        double[] im = new double[fft.getSize()/2 + 1];
+        fft.realForward(timeseries, timeseries.length, re, im);
+        apply((double)sps, fft.getSize(), re, im, fl,fh);
+        fft.realInverse(re, im, timeseriesdouble, timeseries.length);
 
         return timeseriesdouble; 
     }
@@ -454,27 +452,23 @@ public class InvertAzimuth
     /**
      * Implementation for filterdata function
      * @param dt  Time step
-     * @param cx  Complex number form of time series
+     * @param npts  Number of points in the (zero padded) time series
+     * @param re  Real parts of the npts/2 + 1 non-negative frequencies, filtered in place
+     * @param im  Imaginary parts of the npts/2 + 1 non-negative frequencies, filtered in place
      * @param fl  Low corner frequency
      * @param fh  High corner frequency
-     * @return  Complex form of filtered time series
      */
-    private Cmplx[] apply(double dt, Cmplx[] cx, double fl, double fh)
+    private void apply(double dt, int npts, double[] re, double[] im, double fl, double fh)
     {
-        int npts = cx.length;
         int npole = 6;
         int numPoles = npole;
         int twopass = 2; 
         double TWOPI = Math.PI*2;
         double PI = Math.PI;
 
-        Cmplx c0 = new Cmplx(0., 0.);
-        Cmplx c1 = new Cmplx(1., 0.);		
-
         Cmplx[] sph = new Cmplx[numPoles];
         Cmplx[] spl = new Cmplx[numPoles];
 
-        Cmplx cjw, cph, cpl;
         int nop, nepp, np;
         double wch, wcl, ak, ai, ar, w, dw;
         int i, j;
@@ -521,26 +515,49 @@ public class InvertAzimuth
             }
         }
 
-        cx[0] = c0;
+        // The complex arithmetic is written out on doubles to avoid allocating Cmplx objects per frequency
+        re[0] = 0.;
+        im[0] = 0.;
         dw = TWOPI / ((double) npts * dt);
         w = 0.;
         for (i = 1; i < npts/2 + 1; i++) {
             w = w + dw;
-            cjw = new Cmplx(0., -w);
-            cph = c1;
-            cpl = c1;
+            // cjw = (0, -w), cph = cpl = (1, 0)
+            double phr = 1., phi = 0.;
+            double plr = 1., pli = 0.;
+            double nr, ni, dr, di, den;
             for (j = 0; j < npole; j++) {
-                cph = Cmplx.div(Cmplx.mul(cph, sph[j]), Cmplx.add(sph[j], cjw));
-                cpl = Cmplx.div(Cmplx.mul(cpl, cjw), Cmplx.add(spl[j], cjw));
+                // cph = cph * sph[j] / (sph[j] + cjw)
+                nr = phr * sph[j].r - phi * sph[j].i;
+                ni = phi * sph[j].r + phr * sph[j].i;
+                dr = sph[j].r;
+                di = sph[j].i - w;
+                den = dr * dr + di * di;
+                phr = (nr * dr + ni * di) / den;
+                phi = (ni * dr - nr * di) / den;
+                // cpl = cpl * cjw / (spl[j] + cjw)
+                nr = pli * w;
+                ni = -plr * w;
+                dr = spl[j].r;
+                di = spl[j].i - w;
+                den = dr * dr + di * di;
+                plr = (nr * dr + ni * di) / den;
+                pli = (ni * dr - nr * di) / den;
             }
-            cx[i] = Cmplx.mul(cx[i], (Cmplx.mul(cph, cpl)).conjg());
+            // cx = cx * (cph * cpl).conjg()
+            double hr = phr * plr - phi * pli;
+            double hi = phi * plr + phr * pli;
+            double xr = re[i] * hr + im[i] * hi;
+            double xi = im[i] * hr - re[i] * hi;
             if (twopass == 2) {
-                cx[i]= Cmplx.mul(cx[i], Cmplx.mul(cph, cpl));
+                // cx = cx * (cph * cpl)
+                double tr = xr * hr - xi * hi;
+                xi = xi * hr + xr * hi;
+                xr = tr;
             }
-            cx[npts - i] = (cx[i]).conjg();
+            re[i] = xr;
+            im[i] = xi;
         }
-
-        return(cx);
     }
 
 
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2012, United States Geological Survey or
+ * third-party contributors as indicated by the @author tags.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/  >.
+ *
+ */
+package asl.concurrent;
+
+import java.util.Hashtable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A table of values which are each computed at most once, however many
+ * threads ask for them. The first thread to ask for a key computes its
+ * value (on its own thread); any other thread asking for the same key
+ * meanwhile waits for that computation rather than repeating it.
+ *
+ * A computation which throws is removed from the table, so the value is 
+ * computed again by the next thread to ask for it, just as it would be 
+ * if the table were a plain Hashtable of values.
+ */
+public class ComputeOnceTable<K, V>
+{
+    private Hashtable<K, FutureTask<V>> m_tasks = new Hashtable<K, FutureTask<V>>();
+
+    /**
+     * Registers the computation of a key's value, unless the key already 
+     * has one. The value is computed by the first call to get() for the key.
+     *
+     * @param key           The key.
+     * @param computation   Computes the value of the key.
+     * @return true if the computation was registered, false if the key already had one.
+     */
+    public boolean add(K key, Callable<V> computation)
+    {
+        synchronized (m_tasks) {
+            if (m_tasks.containsKey(key)) {
+                return false;
+            }
+            m_tasks.put(key, new FutureTask<V>(computation));
+            return true;
+        }
+    }
+
+    /**
+     * Returns the value of a key, computing it if this is the first request.
+     *
+     * @param key   The key.
+     * @return The value, or null if no computation was registered for the key.
+     */
+    public V get(K key)
+    {
+        FutureTask<V> task = m_tasks.get(key);
+        if (task == null) {
+            return null;
+        }
+        return getValue(key, task);
+    }
+
+    /**
+     * Returns the value of a key, first registering the computation if the
+     * key does not have one yet (see add()).
+     */
+    public V get(K key, Callable<V> computation)
+    {
+        FutureTask<V> task = null;
+        synchronized (m_tasks) {
+            task = m_tasks.get(key);
+            if (task == null) {
+                task = new FutureTask<V>(computation);
+                m_tasks.put(key, task);
+            }
+        }
+        return getValue(key, task);
+    }
+
+    private V getValue(K key, FutureTask<V> task)
+    {
+        // Only the first caller runs the task, later calls return immediately
+        task.run();
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the value of " + key);
+        } catch (ExecutionException e) {
+            synchronized (m_tasks) {
+                if (m_tasks.get(key) == task) {
+                    m_tasks.remove(key);
+                }
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    public boolean containsKey(K key)
+    {
+        return m_tasks.containsKey(key);
+    }
+
+    public int size()
+    {
+        return m_tasks.size();
+    }
+}
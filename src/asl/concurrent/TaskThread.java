@@ -27,7 +27,7 @@ implements Runnable
 {
     private static final Logger logger = Logger.getLogger("asl.concurrent.TaskThread");
 
-    private boolean running = false;
+    private volatile boolean running = false;
     private LinkedBlockingQueue<Task<T>> queue;
     private long timeout = -1;
     private TimeUnit unit;
@@ -88,10 +88,14 @@ implements Runnable
                     running = false;
                 }
                 // Otherwise hand off the task
-                else {
+                else if (task != null) {
                     logger.fine(String.format("Performing task %s : %s", task.getCommand(), (task.getData() == null) ? "null" : task.getData()));
                     performTask(task);
                 }
+                // Or let the subclass catch up while there is nothing to do
+                else {
+                    idle();
+                }
             } catch (InterruptedException exception) {
                 logger.warning("Caught InterruptedException");
             }
@@ -106,6 +110,11 @@ implements Runnable
 
     protected abstract void cleanup();
 
+    // called when no task arrived within the timeout
+    protected void idle()
+    {
+    }
+
  // halt
     public void halt()
     throws InterruptedException
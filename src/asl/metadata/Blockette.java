@@ -114,6 +114,23 @@ public class Blockette
         return true;
     }
 
+    /**
+     * Adds a single value to a field, for blockettes decoded directly from
+     * binary SEED (see DatalessReader) rather than from rdseed's text output.
+     */
+    public void addFieldValue(int fieldID, String value)
+    {
+        Field field;
+        if (!fields.containsKey(fieldID)) {
+            field = new Field(fieldID, "");
+            fields.put(fieldID, field);
+        }
+        else {
+            field = fields.get(fieldID);
+        }
+        field.addValue(value);
+    }
+
     public String getFieldValue(int fieldID, int valueIndex)
     {
         String value = null;
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2012, United States Geological Survey or
+ * third-party contributors as indicated by the @author tags.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/  >.
+ *
+ */
+package asl.metadata;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+/**
+ * A compact binary copy of a dataless volume's decoded blockettes, indexed
+ * by station so that a single station can be loaded without reading (or
+ * assembling) the rest of the volume.
+ *
+ * File layout:
+ * <pre>
+ *   int    MAGIC, VERSION
+ *   int    header length, followed by the header:
+ *            string table  (int count, UTF strings)
+ *            volume blockettes (B010, B011)
+ *            station index (int count; first B050, long offset, int length, int blockettes)
+ *   station sections (the blockettes of each station, in volume order)
+ * </pre>
+ * Each blockette is stored as its number, then (id, value indices) for each
+ * field; every distinct field value is stored once in the string table.
+ */
+public class BlocketteCache
+{
+    private static final Logger logger = Logger.getLogger("asl.metadata.BlocketteCache");
+
+    private static final int MAGIC   = 0x5345454a;
+    private static final int VERSION = 1;
+
+    private File file;
+    private long dataStart;
+    private String[] strings;
+    private ArrayList<Blockette> volumeBlockettes;
+    private Hashtable<StationKey, Section> sections;
+
+    private static class Section
+    {
+        private long offset;
+        private int length;
+        private int count;
+    }
+
+    private BlocketteCache(File file)
+    {
+        this.file = file;
+    }
+
+    /**
+     * Reads the cache file's header and station index.
+     */
+    public static BlocketteCache open(File file)
+    throws IOException
+    {
+        BlocketteCache cache = new BlocketteCache(file);
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            if ((raf.readInt() != MAGIC) || (raf.readInt() != VERSION)) {
+                throw new IOException("not a version " +VERSION+ " blockette cache");
+            }
+            byte[] header = new byte[raf.readInt()];
+            raf.readFully(header);
+            cache.dataStart = raf.getFilePointer();
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(header));
+            cache.strings = new String[in.readInt()];
+            for (int i = 0; i < cache.strings.length; i++) {
+                cache.strings[i] = in.readUTF();
+            }
+            cache.volumeBlockettes = cache.readBlockettes(in, in.readInt());
+            int stationCount = in.readInt();
+            cache.sections = new Hashtable<StationKey, Section>(stationCount * 2);
+            for (int i = 0; i < stationCount; i++) {
+                Blockette stationBlockette = cache.readBlockette(in);
+                Section section = new Section();
+                section.offset = in.readLong();
+                section.length = in.readInt();
+                section.count  = in.readInt();
+                cache.sections.put(new StationKey(stationBlockette), section);
+            }
+        }
+        catch (WrongBlocketteException e) {
+            throw new IOException("corrupt station index");
+        }
+        finally {
+            raf.close();
+        }
+        return cache;
+    }
+
+    public Iterable<StationKey> getStationKeys()
+    {
+        return sections.keySet();
+    }
+
+    public int getStationCount()
+    {
+        return sections.size();
+    }
+
+    /**
+     * @return The volume blockettes followed by the station's blockettes,
+     *         ready to assemble, or null if the volume doesn't contain the station.
+     */
+    public ArrayList<Blockette> readStation(StationKey key)
+    throws IOException
+    {
+        Section section = sections.get(key);
+        if (section == null) {
+            return null;
+        }
+        byte[] data = new byte[section.length];
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.seek(dataStart + section.offset);
+            raf.readFully(data);
+        }
+        finally {
+            raf.close();
+        }
+        ArrayList<Blockette> blockettes = new ArrayList<Blockette>(volumeBlockettes.size() + section.count);
+        blockettes.addAll(volumeBlockettes);
+        blockettes.addAll(readBlockettes(new DataInputStream(new ByteArrayInputStream(data)), section.count));
+        return blockettes;
+    }
+
+    private ArrayList<Blockette> readBlockettes(DataInputStream in, int count)
+    throws IOException
+    {
+        ArrayList<Blockette> blockettes = new ArrayList<Blockette>(count);
+        for (int i = 0; i < count; i++) {
+            blockettes.add(readBlockette(in));
+        }
+        return blockettes;
+    }
+
+    private Blockette readBlockette(DataInputStream in)
+    throws IOException
+    {
+        Blockette blockette = new Blockette(in.readUnsignedShort());
+        int fieldCount = in.readUnsignedShort();
+        for (int i = 0; i < fieldCount; i++) {
+            int fieldID = in.readUnsignedShort();
+            int valueCount = in.readUnsignedShort();
+            for (int j = 0; j < valueCount; j++) {
+                blockette.addFieldValue(fieldID, strings[in.readInt()]);
+            }
+        }
+        return blockette;
+    }
+
+    /**
+     * Writes the blockettes (as returned by DatalessReader) to a new cache file.
+     */
+    public static void write(File file, ArrayList<Blockette> blockettes)
+    throws IOException
+    {
+        LinkedHashMap<String, Integer> stringIndex = new LinkedHashMap<String, Integer>();
+        ArrayList<Blockette> volumeBlockettes = new ArrayList<Blockette>();
+        LinkedHashMap<StationKey, ArrayList<Blockette>> stations = new LinkedHashMap<StationKey, ArrayList<Blockette>>();
+        Hashtable<StationKey, Blockette> stationBlockettes = new Hashtable<StationKey, Blockette>();
+
+        // Every blockette after a B050 belongs to that station (see Dataless.assemble())
+        ArrayList<Blockette> current = volumeBlockettes;
+        for (Blockette blockette: blockettes) {
+            if (blockette.getNumber() == 50) {
+                StationKey key;
+                try {
+                    key = new StationKey(blockette);
+                }
+                catch (WrongBlocketteException e) {
+                    throw new RuntimeException(e);
+                }
+                current = stations.get(key);
+                if (current == null) {
+                    current = new ArrayList<Blockette>();
+                    stations.put(key, current);
+                    stationBlockettes.put(key, blockette);
+                }
+            }
+            current.add(blockette);
+        }
+
+        ArrayList<byte[]> sections = new ArrayList<byte[]>(stations.size());
+        for (ArrayList<Blockette> station: stations.values()) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            for (Blockette blockette: station) {
+                writeBlockette(out, blockette, stringIndex);
+            }
+            out.close();
+            sections.add(bytes.toByteArray());
+        }
+
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(index);
+        out.writeInt(volumeBlockettes.size());
+        for (Blockette blockette: volumeBlockettes) {
+            writeBlockette(out, blockette, stringIndex);
+        }
+        out.writeInt(stations.size());
+        long offset = 0;
+        int i = 0;
+        for (StationKey key: stations.keySet()) {
+            writeBlockette(out, stationBlockettes.get(key), stringIndex);
+            out.writeLong(offset);
+            out.writeInt(sections.get(i).length);
+            out.writeInt(stations.get(key).size());
+            offset += sections.get(i).length;
+            i++;
+        }
+        out.close();
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        out = new DataOutputStream(header);
+        out.writeInt(stringIndex.size());
+        for (String value: stringIndex.keySet()) {
+            out.writeUTF(value);
+        }
+        index.writeTo(out);
+        out.close();
+
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 65536));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(header.size());
+            header.writeTo(out);
+            for (byte[] section: sections) {
+                out.write(section);
+            }
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    private static void writeBlockette(DataOutputStream out, Blockette blockette, LinkedHashMap<String, Integer> stringIndex)
+    throws IOException
+    {
+        Hashtable<Integer, Field> fields = blockette.getFields();
+        out.writeShort(blockette.getNumber());
+        out.writeShort(fields.size());
+        for (Integer fieldID: new TreeSet<Integer>(fields.keySet())) {
+            ArrayList<String> values = fields.get(fieldID).getValues();
+            out.writeShort(fieldID);
+            out.writeShort(values.size());
+            for (String value: values) {
+                Integer index = stringIndex.get(value);
+                if (index == null) {
+                    index = stringIndex.size();
+                    stringIndex.put(value, index);
+                }
+                out.writeInt(index);
+            }
+        }
+    }
+}
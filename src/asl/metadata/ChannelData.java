@@ -119,6 +119,11 @@ public class ChannelData
         return epochs.get(timestamp);
     }
 
+    public Hashtable<Calendar, EpochData> getEpochs()
+    {
+        return epochs;
+    }
+
 // containsEpoch - search through epochs of current channeldata
 //                 return true if epochTime is contained.
 /**
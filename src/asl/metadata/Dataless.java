@@ -82,6 +82,8 @@ package asl.metadata;
 
 import asl.worker.CancelledException;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
@@ -94,6 +96,7 @@ public class Dataless
 
     private SeedVolume volume;
     private Collection<String> rawDataless;
+    private File datalessFile;
     private ArrayList<Blockette> blockettes;
     private boolean complete;
 
@@ -114,6 +117,32 @@ public class Dataless
         complete = false;
     }
 
+    private Dataless()
+    {
+        complete = false;
+    }
+
+    /**
+     * Assembles blockettes that have already been decoded (by DatalessReader
+     * or from a BlocketteCache), in volume order.
+     */
+    public static Dataless fromBlockettes(ArrayList<Blockette> blockettes)
+    {
+        Dataless dataless = new Dataless();
+        dataless.blockettes = blockettes;
+        return dataless;
+    }
+
+    /**
+     * Reads the binary dataless SEED volume directly (see DatalessReader),
+     * instead of parsing the output of `rdseed -s`.
+     */
+    public Dataless(File datalessFile)
+    {
+        this.datalessFile = datalessFile;
+        complete = false;
+    }
+
     public void processVolume(Station station)
     throws CancelledException, DatalessParseException
     {
@@ -126,7 +155,12 @@ public class Dataless
     {
         boolean failed = true;
         try {
-            parse();
+            if (datalessFile != null) {
+                blockettes = new DatalessReader(datalessFile).readBlockettes();
+            }
+            else {
+                parse();
+            }
             assemble();
             complete = true;
             failed = false;
@@ -144,6 +178,8 @@ public class Dataless
             logger.warning("Wrong blockettte.");
         } catch (CancelledException exception) {
             failed = false;
+        } catch (IOException exception) {
+            logger.warning("Could not read dataless file '" +datalessFile+ "': " + exception.getMessage());
         }
 
         if (failed) {
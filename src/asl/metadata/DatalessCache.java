@@ -0,0 +1,336 @@
+/*
+ * Copyright 2012, United States Geological Survey or
+ * third-party contributors as indicated by the @author tags.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/  >.
+ *
+ */
+package asl.metadata;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.logging.Logger;
+
+import asl.util.Hex;
+
+/**
+ * Process-wide cache of assembled dataless volumes, so that a volume shared
+ * by many stations (e.g., II.dataless) is only read and assembled once.
+ *
+ * Volumes are keyed by file path and modification time; a volume that has
+ * changed on disk is read again. Each station gets the StationData for its
+ * own station, and should call release() once it has been scanned. A volume
+ * is evicted once every station in it that is scheduled to be scanned (see
+ * setScheduledStations()) has been released.
+ *
+ * If a cache directory is set, the decoded blockettes of each volume are
+ * also written there as a BlocketteCache, named for the dataless file and
+ * the MD5 of its contents. Later runs then only load (and assemble) the
+ * stations that they scan, instead of reading the whole dataless again.
+ */
+public class DatalessCache
+{
+    private static final Logger logger = Logger.getLogger("asl.metadata.DatalessCache");
+
+    private static Hashtable<String, Volume> volumes = new Hashtable<String, Volume>();
+    private static HashSet<StationKey> scheduled = null;
+    private static File cacheDir = null;
+
+
+    /**
+     * Limits the stations that must be released before a volume is evicted
+     * to those that will actually be scanned. If this is never set, every
+     * station in the volume must be released.
+     */
+    public static synchronized void setScheduledStations(Collection<Station> stations)
+    {
+        scheduled = new HashSet<StationKey>();
+        for (Station station: stations) {
+            scheduled.add(new StationKey(station));
+        }
+    }
+
+    /**
+     * Sets the directory of blockette caches (null to always read the dataless).
+     */
+    public static synchronized void setCacheDir(File dir)
+    {
+        if (dir != null) {
+            dir.mkdirs();
+        }
+        cacheDir = dir;
+    }
+
+    private static synchronized File getCacheDir()
+    {
+        return cacheDir;
+    }
+
+    /**
+     * @return The station's metadata for all epochs, or null if the volume
+     *         does not contain the station.
+     * @throws DatalessParseException If the volume could not be read or assembled.
+     */
+    public static StationData getStationData(File file, Station station)
+    throws DatalessParseException
+    {
+        Volume volume;
+        synchronized (DatalessCache.class) {
+            String path = file.getAbsolutePath();
+            long lastModified = file.lastModified();
+            volume = volumes.get(path);
+            if ((volume == null) || (volume.lastModified != lastModified)) {
+                volume = new Volume(file, lastModified);
+                volumes.put(path, volume);
+            }
+        }
+        // Other stations of this volume wait here while it is read;
+        // stations of other volumes don't.
+        return volume.getStationData(station);
+    }
+
+    /**
+     * Marks the station as scanned, and evicts its volume if this was the
+     * last scheduled station in it.
+     */
+    public static synchronized void release(File file, Station station)
+    {
+        String path = file.getAbsolutePath();
+        Volume volume = volumes.get(path);
+        if ((volume == null) || !volume.release(new StationKey(station))) {
+            return;
+        }
+        volumes.remove(path);
+        logger.info(String.format("Evicted dataless volume '%s' (all %d scheduled stations scanned)", path, volume.released.size()));
+    }
+
+    private static synchronized void remove(Volume volume)
+    {
+        String path = volume.file.getAbsolutePath();
+        if (volumes.get(path) == volume) {
+            volumes.remove(path);
+        }
+    }
+
+    private static synchronized HashSet<StationKey> getScheduledStations()
+    {
+        return scheduled;
+    }
+
+    private static class Volume
+    {
+        private File file;
+        private long lastModified;
+        private boolean loaded = false;
+        private HashSet<StationKey> pending = null;
+        private HashSet<StationKey> released = new HashSet<StationKey>();
+
+        // Either the whole volume has been assembled, or stations are
+        // assembled from the blockette cache as they are requested
+        private SeedVolume volume = null;
+        private BlocketteCache blocketteCache = null;
+        private Hashtable<StationKey, StationData> stations = new Hashtable<StationKey, StationData>();
+
+        private Volume(File file, long lastModified)
+        {
+            this.file = file;
+            this.lastModified = lastModified;
+        }
+
+        private synchronized StationData getStationData(Station station)
+        throws DatalessParseException
+        {
+            if (!loaded) {
+                load();
+            }
+            StationKey key = new StationKey(station);
+            if (volume != null) {
+                return volume.getStation(key);
+            }
+            if (!stations.containsKey(key)) {
+                try {
+                    ArrayList<Blockette> blockettes = blocketteCache.readStation(key);
+                    if (blockettes == null) {
+                        return null;
+                    }
+                    stations.put(key, assemble(blockettes).getStation(key));
+                }
+                catch (IOException e) {
+                    logger.warning(String.format("Could not read station %s from metadata cache: %s --> reading '%s'", key, e, file));
+                    blocketteCache = null;
+                    readDataless(null);
+                    return volume.getStation(key);
+                }
+            }
+            return stations.get(key);
+        }
+
+        private void load()
+        throws DatalessParseException
+        {
+            long start = System.currentTimeMillis();
+            File cacheFile = null;
+            File dir = getCacheDir();
+            if (dir != null) {
+                try {
+                    cacheFile = new File(dir, file.getName() + "." + digestFile(file) + ".blockettes");
+                    if (cacheFile.exists()) {
+                        blocketteCache = BlocketteCache.open(cacheFile);
+                    }
+                }
+                catch (IOException e) {
+                    logger.warning(String.format("Ignoring metadata cache for '%s': %s", file, e));
+                }
+            }
+
+            HashSet<StationKey> stationKeys = new HashSet<StationKey>();
+            String source;
+            if (blocketteCache != null) {
+                source = "cache";
+                for (StationKey key: blocketteCache.getStationKeys()) {
+                    stationKeys.add(key);
+                }
+            }
+            else {
+                source = "dataless";
+                readDataless(cacheFile);
+                stationKeys.addAll(volume.getStations().keySet());
+            }
+
+            int stationCount = stationKeys.size();
+            HashSet<StationKey> scheduled = getScheduledStations();
+            if (scheduled != null) {
+                stationKeys.retainAll(scheduled);
+            }
+            synchronized (DatalessCache.class) {
+                pending = stationKeys;
+                pending.removeAll(released);
+            }
+            loaded = true;
+            logger.info(String.format("Read dataless volume '%s' from %s (%d stations, %d scheduled) in %d ms", file, source,
+                        stationCount, stationKeys.size(), System.currentTimeMillis() - start));
+        }
+
+        /**
+         * Reads and assembles the whole volume, writing its blockettes to
+         * cacheFile (unless it is null).
+         */
+        private void readDataless(File cacheFile)
+        throws DatalessParseException
+        {
+            try {
+                ArrayList<Blockette> blockettes = new DatalessReader(file).readBlockettes();
+                if (cacheFile != null) {
+                    writeBlocketteCache(cacheFile, blockettes);
+                }
+                volume = assemble(blockettes);
+            }
+            catch (IOException e) {
+                logger.warning(String.format("Could not read dataless volume '%s': %s", file, e));
+            }
+            if (volume == null) {
+                // Don't keep the failure; the next station will try again
+                DatalessCache.remove(this);
+                throw new DatalessParseException("Unable to process dataless seed file '" +file+ "'");
+            }
+        }
+
+        private SeedVolume assemble(ArrayList<Blockette> blockettes)
+        {
+            Dataless dataless = Dataless.fromBlockettes(blockettes);
+            try {
+                dataless.processVolume("", ""); // The network and station masks aren't implemented
+            }
+            catch (Exception e) {
+                logger.warning(String.format("Could not assemble dataless volume '%s': %s", file, e));
+            }
+            return dataless.getVolume();
+        }
+
+        /**
+         * Writes the cache beside any older versions for this dataless file,
+         * which are then removed.
+         */
+        private void writeBlocketteCache(File cacheFile, ArrayList<Blockette> blockettes)
+        {
+            File dir = cacheFile.getParentFile();
+            File temp = new File(dir, cacheFile.getName() + ".tmp");
+            try {
+                BlocketteCache.write(temp, blockettes);
+                if (!temp.renameTo(cacheFile)) {
+                    throw new IOException("could not rename " + temp);
+                }
+            }
+            catch (IOException e) {
+                logger.warning(String.format("Could not write metadata cache file '%s': %s", cacheFile, e));
+                temp.delete();
+                return;
+            }
+
+            String prefix = file.getName() + ".";
+            String[] names = dir.list();
+            for (String name: (names == null) ? new String[0] : names) {
+                if (name.startsWith(prefix) && name.endsWith(".blockettes") && !name.equals(cacheFile.getName())) {
+                    new File(dir, name).delete();
+                }
+            }
+        }
+
+        private String digestFile(File file)
+        throws IOException
+        {
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("MD5");
+            }
+            catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException("Could not initialize digest for the 'MD5' algorithm");
+            }
+            FileInputStream in = new FileInputStream(file);
+            try {
+                byte[] buffer = new byte[65536];
+                int count;
+                while ((count = in.read(buffer)) > 0) {
+                    digest.update(buffer, 0, count);
+                }
+            }
+            finally {
+                in.close();
+            }
+            return Hex.byteArrayToHexString(digest.digest());
+        }
+
+        /**
+         * Called with the DatalessCache lock held.
+         *
+         * @return True if every scheduled station in this volume has been released.
+         */
+        private boolean release(StationKey station)
+        {
+            released.add(station);
+            if (pending == null) {
+                return false;
+            }
+            pending.remove(station);
+            return pending.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2012, United States Geological Survey or
+ * third-party contributors as indicated by the @author tags.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/  >.
+ *
+ */
+package asl.metadata;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Hashtable;
+import java.util.Set;
+
+import asl.metadata.meta_new.ChannelMeta;
+import asl.metadata.meta_new.ResponseStage;
+
+/**
+ * Reads each dataless SEED volume both through `rdseed -s` (the text path)
+ * and with DatalessReader (the binary path), and verifies that they
+ * assemble into the same SeedVolume: the same stations, channels and
+ * epochs, the same values for the blockette fields that the metadata model
+ * uses, and the same ChannelMeta (digest and stage units) for every
+ * channel epoch.
+ *
+ * usage: DatalessParity <dataless file> [...]
+ *
+ * rdseed must be on the PATH.
+ */
+public class DatalessParity
+{
+    private static final int MAX_DIFFERENCES = 20;
+
+    private static final int[] STATION_FIELDS = {3, 4, 5, 6, 13, 14, 16};
+    private static final int[] CHANNEL_FIELDS = {3, 4, 13, 14, 15, 18, 21, 22, 23};
+
+    private ArrayList<String> differences = new ArrayList<String>();
+
+    public static void main(String args[])
+    throws Exception
+    {
+        if (args.length < 1) {
+            System.out.println("usage: DatalessParity <dataless file> [...]");
+            System.exit(1);
+        }
+        boolean identical = true;
+        for (String path: args) {
+            File file = new File(path);
+
+            long start = System.nanoTime();
+            Dataless text = new Dataless(runRdseed(file));
+            text.processVolume("", "");
+            double textSeconds = (System.nanoTime() - start) / 1e9;
+
+            start = System.nanoTime();
+            Dataless binary = new Dataless(file);
+            binary.processVolume("", "");
+            double binarySeconds = (System.nanoTime() - start) / 1e9;
+
+            DatalessParity parity = new DatalessParity();
+            int channelEpochs = parity.compare(text.getVolume(), binary.getVolume());
+            System.out.format("== DatalessParity: %s: %d channel epochs, rdseed %.3f sec, binary %.3f sec\n",
+                              file, channelEpochs, textSeconds, binarySeconds);
+            for (String difference: parity.differences) {
+                System.out.format("==   MISMATCH: %s\n", difference);
+            }
+            if (parity.differences.size() > 0) {
+                identical = false;
+            }
+        }
+        if (!identical) {
+            System.exit(1);
+        }
+        System.out.format("== DatalessParity: all volumes are identical\n");
+    }
+
+    private static ArrayList<String> runRdseed(File file)
+    throws Exception
+    {
+        ProcessBuilder pb = new ProcessBuilder("rdseed", "-s", "-f", file.getPath());
+        Process process = pb.start();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        ArrayList<String> strings = new ArrayList<String>();
+        String line = null;
+        while ((line = reader.readLine()) != null) {
+            strings.add(line);
+        }
+        process.waitFor();
+        return strings;
+    }
+
+    /**
+     * @return The number of channel epochs compared.
+     */
+    private int compare(SeedVolume text, SeedVolume binary)
+    {
+        if ((text == null) || (binary == null)) {
+            difference("volume could not be assembled (rdseed: %s, binary: %s)", text != null, binary != null);
+            return 0;
+        }
+        Hashtable<StationKey, StationData> textStations = text.getStations();
+        Hashtable<StationKey, StationData> binaryStations = binary.getStations();
+        if (!sameKeys("stations", textStations.keySet(), binaryStations.keySet())) {
+            return 0;
+        }
+
+        int channelEpochs = 0;
+        for (StationKey stationKey: textStations.keySet()) {
+            StationData textStation = textStations.get(stationKey);
+            StationData binaryStation = binaryStations.get(stationKey);
+            if (sameKeys(stationKey + " epochs", textStation.getEpochs().keySet(), binaryStation.getEpochs().keySet())) {
+                for (Calendar epoch: textStation.getEpochs().keySet()) {
+                    compareFields(stationKey + " " + EpochData.epochToDateString(epoch), STATION_FIELDS,
+                                  textStation.getEpoch(epoch), binaryStation.getEpoch(epoch));
+                }
+            }
+
+            Hashtable<ChannelKey, ChannelData> textChannels = textStation.getChannels();
+            Hashtable<ChannelKey, ChannelData> binaryChannels = binaryStation.getChannels();
+            if (!sameKeys(stationKey + " channels", textChannels.keySet(), binaryChannels.keySet())) {
+                continue;
+            }
+            for (ChannelKey channelKey: textChannels.keySet()) {
+                ChannelData textChannel = textChannels.get(channelKey);
+                ChannelData binaryChannel = binaryChannels.get(channelKey);
+                String channelName = stationKey + " " + channelKey;
+                if (!sameKeys(channelName + " epochs", textChannel.getEpochs().keySet(), binaryChannel.getEpochs().keySet())) {
+                    continue;
+                }
+                for (Calendar epoch: textChannel.getEpochs().keySet()) {
+                    String epochName = channelName + " " + EpochData.epochToDateString(epoch);
+                    compareEpochs(epochName, channelKey, epoch, textChannel.getEpoch(epoch), binaryChannel.getEpoch(epoch));
+                    channelEpochs++;
+                }
+            }
+        }
+        return channelEpochs;
+    }
+
+    private void compareEpochs(String name, ChannelKey channelKey, Calendar epoch, EpochData text, EpochData binary)
+    {
+        compareFields(name, CHANNEL_FIELDS, text.getInfo(), binary.getInfo());
+        if (!sameKeys(name + " stages", text.getStages().keySet(), binary.getStages().keySet())) {
+            return;
+        }
+        for (Integer stageID: text.getStages().keySet()) {
+            sameKeys(name + " stage " + stageID + " blockettes",
+                     text.getStage(stageID).getBlockettes().keySet(), binary.getStage(stageID).getBlockettes().keySet());
+        }
+
+        ChannelMeta textMeta = new ChannelMeta(channelKey, epoch);
+        ChannelMeta binaryMeta = new ChannelMeta(channelKey, epoch);
+        try {
+            textMeta.processEpochData(text);
+            binaryMeta.processEpochData(binary);
+        }
+        catch (RuntimeException e) {
+            difference("%s: processEpochData() failed: %s", name, e);
+            return;
+        }
+        if (!textMeta.getDigestString().equals(binaryMeta.getDigestString())) {
+            difference("%s: ChannelMeta digests differ", name);
+        }
+        for (int stageID = 0; stageID < 3; stageID++) {
+            if (!textMeta.hasStage(stageID) || !binaryMeta.hasStage(stageID)) {
+                continue;
+            }
+            ResponseStage textStage = textMeta.getStage(stageID);
+            ResponseStage binaryStage = binaryMeta.getStage(stageID);
+            if ((textStage.getInputUnits() != binaryStage.getInputUnits()) ||
+                (textStage.getStageType() != binaryStage.getStageType())) {
+                difference("%s: stage %d type/units differ ('%s' vs '%s')", name, stageID,
+                           textStage.getInputUnitsString(), binaryStage.getInputUnitsString());
+            }
+        }
+    }
+
+    private void compareFields(String name, int[] fieldIDs, Blockette text, Blockette binary)
+    {
+        for (int fieldID: fieldIDs) {
+            ArrayList<String> textValues = text.getFieldValues(fieldID);
+            ArrayList<String> binaryValues = binary.getFieldValues(fieldID);
+            int count = Math.max((textValues == null) ? 0 : textValues.size(),
+                                 (binaryValues == null) ? 0 : binaryValues.size());
+            for (int i = 0; i < count; i++) {
+                String textValue = text.getFieldValue(fieldID, i);
+                String binaryValue = binary.getFieldValue(fieldID, i);
+                if (!sameValue(textValue, binaryValue)) {
+                    difference("%s: B%03dF%02d[%d] '%s' != '%s'", name, text.getNumber(), fieldID, i, textValue, binaryValue);
+                }
+            }
+        }
+    }
+
+    /**
+     * rdseed reformats numbers and timestamps, so those are compared by value.
+     */
+    private static boolean sameValue(String text, String binary)
+    {
+        if ((text == null) || (binary == null)) {
+            return text == binary;
+        }
+        text = text.trim().replaceAll("\\s+", " ");
+        binary = binary.trim().replaceAll("\\s+", " ");
+        if (text.equals(binary)) {
+            return true;
+        }
+        try {
+            return Double.parseDouble(text) == Double.parseDouble(binary);
+        }
+        catch (NumberFormatException e) {
+        }
+        try {
+            return BlocketteTimestamp.parseTimestamp(text).getTimeInMillis() ==
+                   BlocketteTimestamp.parseTimestamp(binary).getTimeInMillis();
+        }
+        catch (Exception e) {
+        }
+        return false;
+    }
+
+    private boolean sameKeys(String name, Set<?> text, Set<?> binary)
+    {
+        if (text.equals(binary)) {
+            return true;
+        }
+        difference("%s: %s != %s", name, text, binary);
+        return false;
+    }
+
+    private void difference(String format, Object... args)
+    {
+        if (differences.size() < MAX_DIFFERENCES) {
+            differences.add(String.format(format, args));
+        }
+    }
+}
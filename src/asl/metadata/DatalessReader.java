@@ -0,0 +1,472 @@
+/*
+ * Copyright 2012, United States Geological Survey or
+ * third-party contributors as indicated by the @author tags.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/  >.
+ *
+ */
+package asl.metadata;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.logging.Logger;
+
+/**
+ * Reads the control headers of a binary dataless SEED volume directly into
+ * Blockette objects, so that Dataless can assemble them without running
+ * rdseed and parsing its text output.
+ *
+ * The blockettes are numbered and ordered the way `rdseed -s` prints them:
+ * <ul>
+ * <li>Fields keep their SEED field numbers, with one value per repeat.</li>
+ * <li>Abbreviation lookups (B033 instruments, B034 units) are resolved to
+ * their text, e.g. "M/S - Velocity in Meters Per Second".</li>
+ * <li>Each channel's data format dictionary entry (B030) follows its B052.</li>
+ * <li>Empty variable length fields are reported as "(null)".</li>
+ * </ul>
+ *
+ * Only the blockettes that the metadata model uses are decoded (10, 11, 50,
+ * 51, 52, 53, 54, 57, 58, 59, 62, and the 30, 33, 34 dictionaries); any
+ * others are skipped.
+ */
+public class DatalessReader
+{
+    private static final Logger logger = Logger.getLogger("asl.metadata.DatalessReader");
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private File file;
+
+    private int recordLength;
+    private ArrayList<Blockette> blockettes;
+    private Hashtable<Integer, Blockette> formats;
+    private Hashtable<Integer, String> abbreviations;
+    private Hashtable<Integer, String> units;
+
+    // Blockettes that are continued across logical records are decoded from
+    // the concatenated record payloads; these are the payloads' offsets.
+    private byte[] buffer;
+    private int bufferLength;
+    private ArrayList<Integer> recordOffsets;
+
+    public DatalessReader(File file)
+    {
+        this.file = file;
+    }
+
+    /**
+     * @return The volume's blockettes, in the order they should be assembled.
+     */
+    public ArrayList<Blockette> readBlockettes()
+    throws IOException,
+           DatalessParseException
+    {
+        byte[] volume = readFile();
+
+        if ((volume.length < 21) || (volume[6] != 'V') ||
+            !isDigits(volume, 0, 6) || !new String(volume, 8, 3, ASCII).equals("010")) {
+            throw new DatalessParseException("'" +file+ "' does not begin with a volume identifier blockette (B010)");
+        }
+        int exponent = parseInt(volume, 19, 2);
+        if ((exponent < 8) || (exponent > 16)) {
+            throw new DatalessParseException("Invalid logical record length 2^" +exponent+ " in '" +file+ "'");
+        }
+        recordLength = 1 << exponent;
+
+        blockettes = new ArrayList<Blockette>();
+        formats = new Hashtable<Integer, Blockette>();
+        abbreviations = new Hashtable<Integer, String>();
+        units = new Hashtable<Integer, String>();
+        buffer = new byte[recordLength * 4];
+        bufferLength = 0;
+        recordOffsets = new ArrayList<Integer>();
+
+        for (int offset = 0; offset + recordLength <= volume.length; offset += recordLength) {
+            byte type = volume[offset + 6];
+            // Data records (or anything else) end the control headers
+            if ((type != 'V') && (type != 'A') && (type != 'S') && (type != 'T')) {
+                break;
+            }
+            if (volume[offset + 7] != '*') {
+                decodeBuffer();
+            }
+            appendRecord(volume, offset + 8, recordLength - 8);
+        }
+        decodeBuffer();
+
+        if (volume.length % recordLength != 0) {
+            logger.warning(String.format("'%s' is not a whole number of %d byte records", file, recordLength));
+        }
+        return blockettes;
+    }
+
+    private byte[] readFile()
+    throws IOException
+    {
+        FileInputStream stream = new FileInputStream(file);
+        try {
+            byte[] volume = new byte[(int)file.length()];
+            int count = 0;
+            while (count < volume.length) {
+                int bytesRead = stream.read(volume, count, volume.length - count);
+                if (bytesRead < 0) {
+                    break;
+                }
+                count += bytesRead;
+            }
+            return volume;
+        }
+        finally {
+            stream.close();
+        }
+    }
+
+    private void appendRecord(byte[] volume, int offset, int length)
+    {
+        if (bufferLength + length > buffer.length) {
+            byte[] grown = new byte[Math.max(buffer.length * 2, bufferLength + length)];
+            System.arraycopy(buffer, 0, grown, 0, bufferLength);
+            buffer = grown;
+        }
+        recordOffsets.add(bufferLength);
+        System.arraycopy(volume, offset, buffer, bufferLength, length);
+        bufferLength += length;
+    }
+
+    /**
+     * Decodes every blockette in the current record (and its continuations).
+     */
+    private void decodeBuffer()
+    throws DatalessParseException
+    {
+        int position = 0;
+        int record = 0;
+        while (position + 7 <= bufferLength) {
+            // The rest of a record is padding if it can't hold a blockette;
+            // the next blockette begins with the next logical record.
+            if (!isDigits(buffer, position, 7)) {
+                while ((record < recordOffsets.size()) && (recordOffsets.get(record) <= position)) {
+                    record++;
+                }
+                if (record >= recordOffsets.size()) {
+                    break;
+                }
+                position = recordOffsets.get(record);
+                continue;
+            }
+            int number = parseInt(buffer, position, 3);
+            int length = parseInt(buffer, position + 3, 4);
+            if ((length < 7) || (position + length > bufferLength)) {
+                throw new DatalessParseException(String.format("Truncated blockette B%03d (length %d) in '%s'", number, length, file));
+            }
+            decodeBlockette(number, new FieldReader(buffer, position + 7, position + length));
+            position += length;
+        }
+        bufferLength = 0;
+        recordOffsets.clear();
+    }
+
+    private void decodeBlockette(int number, FieldReader reader)
+    {
+        Blockette blockette = new Blockette(number);
+        int count;
+
+        switch (number) {
+            case 10: // Volume Identifier
+                blockette.addFieldValue(3, reader.fixed(4));
+                blockette.addFieldValue(4, reader.fixed(2));
+                for (int id = 5; (id <= 9) && reader.hasMore(); id++) {
+                    blockette.addFieldValue(id, reader.variable());
+                }
+                break;
+            case 11: // Volume Station Header Index
+                count = reader.integer(3);
+                blockette.addFieldValue(3, Integer.toString(count));
+                for (int i = 0; i < count; i++) {
+                    blockette.addFieldValue(4, reader.fixed(5));
+                    blockette.addFieldValue(5, reader.fixed(6));
+                }
+                break;
+            case 30: // Data Format Dictionary
+                blockette.addFieldValue(3, reader.variable());
+                int code = reader.integer(4);
+                blockette.addFieldValue(4, Integer.toString(code));
+                blockette.addFieldValue(5, reader.fixed(3));
+                count = reader.integer(2);
+                blockette.addFieldValue(6, Integer.toString(count));
+                for (int i = 0; i < count; i++) {
+                    blockette.addFieldValue(7, reader.variable());
+                }
+                formats.put(code, blockette);
+                return;
+            case 33: // Generic Abbreviation
+                int lookup = reader.integer(3);
+                abbreviations.put(lookup, reader.variable());
+                return;
+            case 34: // Units Abbreviations
+                lookup = reader.integer(3);
+                String name = reader.variable();
+                String description = reader.variable();
+                units.put(lookup, description.equals("(null)") ? name : name + " - " + description);
+                return;
+            case 50: // Station Identifier
+                blockette.addFieldValue(3, reader.fixed(5));
+                blockette.addFieldValue(4, reader.fixed(10));
+                blockette.addFieldValue(5, reader.fixed(11));
+                blockette.addFieldValue(6, reader.fixed(7));
+                blockette.addFieldValue(7, reader.fixed(4));
+                blockette.addFieldValue(8, reader.fixed(3));
+                blockette.addFieldValue(9, reader.variable());
+                blockette.addFieldValue(10, lookupAbbreviation(reader.integer(3)));
+                blockette.addFieldValue(11, reader.fixed(4));
+                blockette.addFieldValue(12, reader.fixed(2));
+                blockette.addFieldValue(13, reader.variable());
+                blockette.addFieldValue(14, reader.variable());
+                blockette.addFieldValue(15, reader.fixed(1));
+                if (reader.hasMore()) { // The network code was added in SEED 2.3
+                    blockette.addFieldValue(16, reader.fixed(2));
+                }
+                break;
+            case 51: // Station Comment
+            case 59: // Channel Comment
+                blockette.addFieldValue(3, reader.variable());
+                blockette.addFieldValue(4, reader.variable());
+                blockette.addFieldValue(5, reader.fixed(4));
+                blockette.addFieldValue(6, reader.fixed(6));
+                break;
+            case 52: // Channel Identifier
+                blockette.addFieldValue(3, reader.fixed(2));
+                blockette.addFieldValue(4, reader.fixed(3));
+                blockette.addFieldValue(5, reader.fixed(4));
+                blockette.addFieldValue(6, lookupAbbreviation(reader.integer(3)));
+                blockette.addFieldValue(7, reader.variable());
+                blockette.addFieldValue(8, lookupUnits(reader.integer(3)));
+                blockette.addFieldValue(9, lookupUnits(reader.integer(3)));
+                blockette.addFieldValue(10, reader.fixed(10));
+                blockette.addFieldValue(11, reader.fixed(11));
+                blockette.addFieldValue(12, reader.fixed(7));
+                blockette.addFieldValue(13, reader.fixed(5));
+                blockette.addFieldValue(14, reader.fixed(5));
+                blockette.addFieldValue(15, reader.fixed(5));
+                int format = reader.integer(4);
+                blockette.addFieldValue(16, Integer.toString(format));
+                blockette.addFieldValue(17, reader.fixed(2));
+                blockette.addFieldValue(18, reader.fixed(10));
+                blockette.addFieldValue(19, reader.fixed(10));
+                blockette.addFieldValue(20, reader.fixed(4));
+                blockette.addFieldValue(21, reader.variable());
+                blockette.addFieldValue(22, reader.variable());
+                blockette.addFieldValue(23, reader.variable());
+                blockette.addFieldValue(24, reader.fixed(1));
+                blockettes.add(blockette);
+                // rdseed follows each channel with its data format
+                if (formats.containsKey(format)) {
+                    blockettes.add(formats.get(format));
+                }
+                return;
+            case 53: // Response (Poles & Zeros)
+                blockette.addFieldValue(3, describeTransferFunction(reader.fixed(1)));
+                blockette.addFieldValue(4, reader.fixed(2));
+                blockette.addFieldValue(5, lookupUnits(reader.integer(3)));
+                blockette.addFieldValue(6, lookupUnits(reader.integer(3)));
+                blockette.addFieldValue(7, reader.fixed(12));
+                blockette.addFieldValue(8, reader.fixed(12));
+                count = reader.integer(3);
+                blockette.addFieldValue(9, Integer.toString(count));
+                for (int i = 0; i < count; i++) {
+                    for (int id = 10; id <= 13; id++) {
+                        blockette.addFieldValue(id, reader.fixed(12));
+                    }
+                }
+                count = reader.integer(3);
+                blockette.addFieldValue(14, Integer.toString(count));
+                for (int i = 0; i < count; i++) {
+                    for (int id = 15; id <= 18; id++) {
+                        blockette.addFieldValue(id, reader.fixed(12));
+                    }
+                }
+                break;
+            case 54: // Response (Coefficients)
+                blockette.addFieldValue(3, describeTransferFunction(reader.fixed(1)));
+                blockette.addFieldValue(4, reader.fixed(2));
+                blockette.addFieldValue(5, lookupUnits(reader.integer(3)));
+                blockette.addFieldValue(6, lookupUnits(reader.integer(3)));
+                count = reader.integer(4);
+                blockette.addFieldValue(7, Integer.toString(count));
+                for (int i = 0; i < count; i++) {
+                    blockette.addFieldValue(8, reader.fixed(12));
+                    blockette.addFieldValue(9, reader.fixed(12));
+                }
+                count = reader.integer(4);
+                blockette.addFieldValue(10, Integer.toString(count));
+                for (int i = 0; i < count; i++) {
+                    blockette.addFieldValue(11, reader.fixed(12));
+                    blockette.addFieldValue(12, reader.fixed(12));
+                }
+                break;
+            case 57: // Decimation
+                blockette.addFieldValue(3, reader.fixed(2));
+                blockette.addFieldValue(4, reader.fixed(10));
+                blockette.addFieldValue(5, reader.fixed(5));
+                blockette.addFieldValue(6, reader.fixed(5));
+                blockette.addFieldValue(7, reader.fixed(11));
+                blockette.addFieldValue(8, reader.fixed(11));
+                break;
+            case 58: // Channel Sensitivity/Gain
+                blockette.addFieldValue(3, reader.fixed(2));
+                blockette.addFieldValue(4, reader.fixed(12));
+                blockette.addFieldValue(5, reader.fixed(12) + " HZ");
+                count = reader.integer(2);
+                blockette.addFieldValue(6, Integer.toString(count));
+                for (int i = 0; i < count; i++) {
+                    blockette.addFieldValue(7, reader.fixed(12));
+                    blockette.addFieldValue(8, reader.fixed(12));
+                    blockette.addFieldValue(9, reader.variable());
+                }
+                break;
+            case 62: // Response (Polynomial)
+                blockette.addFieldValue(3, describeTransferFunction(reader.fixed(1)));
+                blockette.addFieldValue(4, reader.fixed(2));
+                blockette.addFieldValue(5, lookupUnits(reader.integer(3)));
+                blockette.addFieldValue(6, lookupUnits(reader.integer(3)));
+                String approximation = reader.fixed(1);
+                blockette.addFieldValue(7, approximation.equals("M") ? "M [MacLaurin]" : approximation);
+                blockette.addFieldValue(8, reader.fixed(1));
+                for (int id = 9; id <= 13; id++) {
+                    blockette.addFieldValue(id, reader.fixed(12));
+                }
+                count = reader.integer(3);
+                blockette.addFieldValue(14, Integer.toString(count));
+                for (int i = 0; i < count; i++) {
+                    blockette.addFieldValue(15, reader.fixed(12));
+                    blockette.addFieldValue(16, reader.fixed(12));
+                }
+                break;
+            default:
+                return;
+        }
+        blockettes.add(blockette);
+    }
+
+    private String lookupAbbreviation(int lookup)
+    {
+        String abbreviation = abbreviations.get(lookup);
+        return (abbreviation == null) ? Integer.toString(lookup) : lookup + "    " + abbreviation;
+    }
+
+    private String lookupUnits(int lookup)
+    {
+        String unitsString = units.get(lookup);
+        return (unitsString == null) ? Integer.toString(lookup) : unitsString;
+    }
+
+    private static String describeTransferFunction(String type)
+    {
+        if (type.equals("A")) {
+            return "A [Laplace Transform (Rad/sec)]";
+        }
+        else if (type.equals("B")) {
+            return "B [Analog (Hz)]";
+        }
+        else if (type.equals("C")) {
+            return "C [Composite]";
+        }
+        else if (type.equals("D")) {
+            return "D [Digital (Z-transform)]";
+        }
+        else if (type.equals("P")) {
+            return "P [Polynomial]";
+        }
+        return type;
+    }
+
+    private static boolean isDigits(byte[] data, int offset, int length)
+    {
+        for (int i = offset; i < offset + length; i++) {
+            if ((data[i] < '0') || (data[i] > '9')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int parseInt(byte[] data, int offset, int length)
+    {
+        int value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            value = value * 10 + (data[i] - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Reads a blockette's fixed length and variable length (~ terminated)
+     * ASCII fields in sequence.
+     */
+    private class FieldReader
+    {
+        private byte[] data;
+        private int position;
+        private int end;
+
+        FieldReader(byte[] data, int position, int end)
+        {
+            this.data = data;
+            this.position = position;
+            this.end = end;
+        }
+
+        boolean hasMore()
+        {
+            return position < end;
+        }
+
+        String fixed(int length)
+        {
+            int count = Math.max(0, Math.min(length, end - position));
+            String value = new String(data, position, count, ASCII).trim();
+            position += count;
+            return value;
+        }
+
+        int integer(int length)
+        {
+            String value = fixed(length);
+            try {
+                return Integer.parseInt(value);
+            }
+            catch (NumberFormatException e) {
+                logger.warning(String.format("Invalid integer field '%s' in '%s'", value, file));
+                return 0;
+            }
+        }
+
+        String variable()
+        {
+            int start = position;
+            while ((position < end) && (data[position] != '~')) {
+                position++;
+            }
+            String value = new String(data, start, position - start, ASCII).trim();
+            if (position < end) {
+                position++; // skip the ~ terminator
+            }
+            return (value.length() == 0) ? "(null)" : value;
+        }
+    }
+}
@@ -51,12 +51,18 @@ public class MetaGenerator
 {
     private static final Logger logger = Logger.getLogger("asl.metadata.MetaGenerator");
 
-    private SeedVolume volume = null;
-    private Collection<String> rawDataless;
-    private ArrayList<String> strings = null;
     private StationData stationData = null;
     private Boolean successfullyLoaded = false;
     private String datalessDir = null;
+    private File datalessFile = null;
+    private Station station = null;
+
+    // Epoch index: the ChannelMeta(s) built for each distinct set of channel epochs,
+    //   keyed by the epoch start times in effect on the requested day (see getStationMeta).
+    //   These are never handed out directly - each day gets a copy(timestamp, dayBreak)
+    //   that shares their response stages.
+    private Hashtable<String, Hashtable<ChannelKey, ChannelMeta>> epochIndex =
+        new Hashtable<String, Hashtable<ChannelKey, ChannelMeta>>();
 
     public MetaGenerator(Station station)
     {
@@ -70,7 +76,7 @@ public class MetaGenerator
 
     private void loadDataless(Station station)
     {
-      Dataless dataless   = null;
+      this.station = station;
       String datalessPath = datalessDir;
       String datalessFile = datalessPath + "DATALESS." + station.getNetwork() + "_" + station.getStation() + ".seed"; 
 
@@ -79,47 +85,18 @@ public class MetaGenerator
         datalessFile = datalessPath + "II.dataless"; 
       }
 
-      ProcessBuilder pb = new ProcessBuilder("rdseed", "-s", "-f", datalessFile);
-      //pb.redirectErrorStream(true);
-      strings = new ArrayList<String>();
-
    // First see if the dataless file even exists
       if (!(new File(datalessFile).exists())) {
         System.out.format("=== MetaGenerator: Dataless file=%s does NOT exist!\n", datalessFile);
         return;
       }
 
+   // The volume is shared with any other stations in the same file (e.g., II.dataless)
+      this.datalessFile = new File(datalessFile);
       try {
-        Process process = pb.start();
-        BufferedReader reader = new BufferedReader( new InputStreamReader(process.getInputStream() ) );
-        String line = null;
-        while( ( line = reader.readLine() ) != null ) {
-           strings.add(line);
-        }
-        int shellExitStatus = process.waitFor();
-        //System.out.println("Exit status" + shellExitStatus);
-      }
-   // Need to catch both IOException and InterruptedException
-      catch (IOException e) {
-         System.out.println("Error: IOException Description: " + e.getMessage());
-      }
-      catch (InterruptedException e) {
-         System.out.println("Error: InterruptedException Description: " + e.getMessage());
-      }
-
-      if (strings.size() == 0) { // We didn't read any metadata in from the rdseed output ...
-      }
-      dataless = new Dataless( strings ) ;
-
-      try {
-          dataless.processVolume(station); // The network and station masks aren't implemented
-      }
-      catch (Exception e){
+          stationData = DatalessCache.getStationData(this.datalessFile, station);
       }
-
-      volume = dataless.getVolume();
-
-      if (volume == null){
+      catch (DatalessParseException e) {
          String message = "MetaGenerator: Unable to process dataless seed for: " + station.getNetwork() + "-" + station.getStation();
          throw new RuntimeException(message);
       }
@@ -133,13 +110,20 @@ public class MetaGenerator
     } 
 
 /**
- * loadDataless() reads in the entire dataless seed file (all stations)
- * getStationData returns the metadata for a single station for all epochs
- * It is called by getStationMeta below.
+ * release() tells the DatalessCache that this station has been scanned,
+ * so that its volume can be evicted once all of the volume's stations are done.
+ */
+    public void release() {
+      if (datalessFile != null) {
+        DatalessCache.release(datalessFile, station);
+      }
+    }
+
+/**
+ * loadDataless() gets the metadata for this station for all epochs from the
+ * (shared) dataless volume. getStationData returns it, and is called by getStationMeta below.
  */
     private StationData getStationData(Station station){
-      StationKey stnkey = new StationKey(station);
-      StationData stationData = volume.getStation(stnkey);
       if (stationData == null) {
          System.out.println("stationData is null ==> This COULD be caused by incorrect network code INSIDE seedfile ...");
          return null;
@@ -162,6 +146,10 @@ public class MetaGenerator
  *               Contains the first 3 (0, 1, 2) response stages for the REQUESTED epoch only.
  *               ChannelMeta.setDayBreak() = true if we detect a change in metadata on the 
  *                                           requested timestamp day.
+ *
+ * The ChannelMeta(s) are only built once for each distinct set of channel epochs (see epochIndex);
+ *   every day that falls in the same set of epochs gets a copy that shares the response stages,
+ *   with that day's timestamp and dayBreak flag.
  */
 
     public StationMeta getStationMeta(Station station, Calendar timestamp){
@@ -197,38 +185,49 @@ public class MetaGenerator
       Hashtable<ChannelKey, ChannelData> channels = stationData.getChannels();
       TreeSet<ChannelKey> keys = new TreeSet<ChannelKey>();
       keys.addAll(channels.keySet());
+
+ // See which epoch (if any) of each channel contains the requested time - the set of
+ //   epoch start times identifies the channel metadata, which only needs to be built
+ //   the first time we see this set of epochs
+      Hashtable<ChannelKey, EpochData> epochs = new Hashtable<ChannelKey, EpochData>();
+      StringBuilder epochKey = new StringBuilder();
       for (ChannelKey key : keys){
-        //System.out.println("==Channel:"+key );
         ChannelData channel = channels.get(key);
-        //ChannelMeta channelMeta = new ChannelMeta(key,timestamp);
-//System.out.format("== MetaGen: newChannelMeta(key=%s station=%s)\n", key, station);
-        ChannelMeta channelMeta = new ChannelMeta(key,timestamp,station);
-
-     // See if this channel contains the requested epoch time and if so return the key (=Epoch Start timestamp)
-      //channel.printEpochs();
         Calendar epochTimestamp = channel.containsEpoch(timestamp);
-        if (epochTimestamp !=null){
-           EpochData epochData = channel.getEpoch(epochTimestamp);
+        if (epochTimestamp != null){
+           epochs.put(key, channel.getEpoch(epochTimestamp));
+           epochKey.append(key).append('@').append(epochTimestamp.getTimeInMillis()).append(';');
+        }
+      }
 
-     // If the epoch is closed, check that the end time is at least 24 hours later than the requested time
-           if (epochData.getEndTime() != null ){  
-         // Make sure this epoch end time is > requested time + 24 hours
-              long epochStart = epochData.getStartTime().getTimeInMillis();
-              long epochEnd   = epochData.getEndTime().getTimeInMillis();
-              if ( epochEnd <  (timestamp.getTimeInMillis() + 24 * 3600 * 1000) ) {
-                channelMeta.setDayBreak(); // set channelMeta.dayBreak = true
-              }
-           }
-
-           channelMeta.processEpochData(epochData);
-           stationMeta.addChannel(key, channelMeta);
-        // channelMeta.print();
+      Hashtable<ChannelKey, ChannelMeta> epochChannels = epochIndex.get(epochKey.toString());
+      if (epochChannels == null){
+        epochChannels = new Hashtable<ChannelKey, ChannelMeta>();
+        for (ChannelKey key : epochs.keySet()){
+          ChannelMeta channelMeta = new ChannelMeta(key,timestamp,station);
+          channelMeta.processEpochData(epochs.get(key));
+          epochChannels.put(key, channelMeta);
+        }
+        epochIndex.put(epochKey.toString(), epochChannels);
+        logger.fine(String.format("getStationMeta(): built metadata for epoch set %d of %s-%s (%d channels) on %s",
+                    epochIndex.size(), station.getNetwork(), station.getStation(), epochChannels.size(),
+                    EpochData.epochToDateString(timestamp)));
+      }
 
+      for (ChannelKey key : keys){
+        EpochData epochData = epochs.get(key);
+        if (epochData == null){ // The channel does NOT contain the epoch time
+          continue;
         }
-        else { // The channel does NOT contain the epoch time --> reset ChannelMeta to null
-          //System.out.format("==No Response found for this Channel + Epoch\n");
-            channelMeta = null;
+        boolean dayBreak = false;
+     // If the epoch is closed, check that the end time is at least 24 hours later than the requested time
+        if (epochData.getEndTime() != null ){  
+          long epochEnd   = epochData.getEndTime().getTimeInMillis();
+          if ( epochEnd <  (timestamp.getTimeInMillis() + 24 * 3600 * 1000) ) {
+            dayBreak = true;
+          }
         }
+        stationMeta.addChannel(key, epochChannels.get(key).copy(timestamp, dayBreak));
       }
 
       return stationMeta;
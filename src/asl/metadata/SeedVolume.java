@@ -64,6 +64,11 @@ public class SeedVolume
         return stations.get(key);
     }
 
+    public Hashtable<StationKey, StationData> getStations()
+    {
+        return stations;
+    }
+
     // volume info
     public void setVolumeInfo(Blockette volumeInfo)
     {
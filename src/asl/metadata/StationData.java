@@ -119,6 +119,11 @@ public class StationData
         return epochs.get(timestamp);
     }
 
+    public Hashtable<Calendar, Blockette> getEpochs()
+    {
+        return epochs;
+    }
+
 
 /**
 Epoch index
@@ -138,6 +138,27 @@ public class ChannelMeta extends MemberDigest
         return copyChan;
     }
 
+/**
+ *  Per-day view of this channel for MetaGenerator's epoch index:
+ *    Shares this channel's response stages, which are not modified once the
+ *    epoch data has been processed, but carries its own timestamp and dayBreak flag.
+ *    Neither of those is digested, so every day's view shares this channel's digest too.
+ */
+    public ChannelMeta copy(Calendar metaTimestamp, boolean dayBreak) {
+        ChannelMeta dayChan = new ChannelMeta(new ChannelKey(location, name), metaTimestamp, station);
+        dayChan.comment        = this.comment;
+        dayChan.sampleRate     = this.sampleRate;
+        dayChan.dip            = this.dip;
+        dayChan.azimuth        = this.azimuth;
+        dayChan.depth          = this.depth;
+        dayChan.dayBreak       = dayBreak;
+        dayChan.instrumentType = this.instrumentType;
+        dayChan.channelFlags   = this.channelFlags;
+        dayChan.stages         = this.stages;
+        dayChan.copyDigest(this);
+        return dayChan;
+    }
+
 /**
  *  Shallow copy - Not currently used ...
  */
@@ -193,10 +214,7 @@ public class ChannelMeta extends MemberDigest
           addToDigest(poly.getLowerApproximationBound());
           addToDigest(poly.getUpperApproximationBound());
           addToDigest(poly.getNumberOfCoefficients());
-          double[] coeffs = poly.getRealPolynomialCoefficients();
-          for (int j=0; j<coeffs.length; j++){
-            addToDigest(coeffs[j]);
-          }
+          addToDigest(poly.getRealPolynomialCoefficients());
         }
      // Add Digital Stage to Digest
         else if (stage instanceof DigitalStage){
@@ -219,6 +237,7 @@ public class ChannelMeta extends MemberDigest
     public void setSampleRate(double sampleRate)
     {
         this.sampleRate = sampleRate;
+        markDigestDirty();
     }
     public void setDip(double dip)
     {
@@ -291,6 +310,7 @@ public class ChannelMeta extends MemberDigest
     public void addStage(Integer stageID, ResponseStage responseStage)
     {
         stages.put(stageID, responseStage);
+        markDigestDirty();
     }
 
     public boolean hasStage(Integer stageID)
@@ -385,9 +405,33 @@ public class ChannelMeta extends MemberDigest
  *  @outUnits = 1 Return [Displacement] Response
  *  @outUnits = 2 Return [Velocity    ] Response
  *  @outUnits = 3 Return [Acceleration] Response
+ *
+ *  Responses are cached (see ResponseCache) when freqs[] is the usual uniform grid from f=0,
+ *  so the returned array (and its Cmplx values) may be shared and must not be modified.
 **/
     public Cmplx[] getResponse(double[] freqs, int outUnits){
 
+      String key = null;
+      ResponseStage stage = stages.get(1);
+      if (stage != null) {
+          key = ResponseCache.createKey(this, stage.getInputUnits(), freqs, outUnits);
+      }
+      if (key != null) {
+          Cmplx[] response = ResponseCache.get(key);
+          if (response != null) {
+              return response;
+          }
+      }
+
+      Cmplx[] response = computeResponse(freqs, outUnits);
+      if (key != null) {
+          ResponseCache.put(key, response);
+      }
+      return response;
+    }
+
+    private Cmplx[] computeResponse(double[] freqs, int outUnits){
+
       if (outUnits < 0 || outUnits > 3) {
           throw new RuntimeException("getResponse(): Requested outUnits Unrecognized");
       }
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2012, United States Geological Survey or
+ * third-party contributors as indicated by the @author tags.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/  >.
+ *
+ */
+
+package asl.metadata.meta_new;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import freq.Cmplx;
+
+/**
+ * A process-wide, least-recently-used cache of evaluated instrument responses.
+ *
+ * An entry is keyed by the ChannelMeta digest (which covers its sample rate,
+ * gains and poles/zeros), the input units of the response, the frequency grid
+ * (nf points spaced df apart, starting at 0) and the requested output units.
+ * Since a metadata epoch rarely changes, the same responses are requested by
+ * every day (and every Scanner thread) that uses the channel.
+ *
+ * The cache holds at most MAX_FREQUENCIES frequencies in all, evicting the least
+ * recently used responses first. Cached arrays are shared, so the Cmplx values
+ * they contain must not be modified.
+ */
+public class ResponseCache
+{
+    // About 32 bytes per Cmplx --> ~128 MB
+    public static final long MAX_FREQUENCIES = 4L * 1024 * 1024;
+
+    private static final LinkedHashMap<String, Cmplx[]> responses = new LinkedHashMap<String, Cmplx[]>(64, 0.75f, true);
+    private static long size = 0;
+
+    /**
+     * @return The key for a response evaluated at freqs[], or null if freqs[] is not
+     *         a uniform grid starting at 0 (in which case it should not be cached).
+     */
+    public static String createKey(ChannelMeta chanMeta, int inputUnits, double[] freqs, int outUnits)
+    {
+        if (freqs.length < 2 || freqs[0] != 0.) {
+            return null;
+        }
+        double df = freqs[1];
+        for (int k = 2; k < freqs.length; k++) {
+            if (freqs[k] != (double)k * df) {
+                return null;
+            }
+        }
+        return String.format("%s:%d:%d:%s:%d", chanMeta.getDigestString(), inputUnits, freqs.length,
+                             Double.toString(df), outUnits);
+    }
+
+    public static synchronized Cmplx[] get(String key)
+    {
+        return responses.get(key);
+    }
+
+    public static synchronized void put(String key, Cmplx[] response)
+    {
+        if (response.length > MAX_FREQUENCIES) {
+            return;
+        }
+        Cmplx[] previous = responses.put(key, response);
+        if (previous != null) {
+            size -= previous.length;
+        }
+        size += response.length;
+
+        Iterator<Map.Entry<String, Cmplx[]>> iterator = responses.entrySet().iterator();
+        while (size > MAX_FREQUENCIES && iterator.hasNext()) {
+            Map.Entry<String, Cmplx[]> eldest = iterator.next();
+            size -= eldest.getValue().length;
+            iterator.remove();
+        }
+    }
+}
@@ -37,6 +37,7 @@ import javax.swing.border.EmptyBorder;
 
 import seed.IllegalSeednameException;
 import seed.MiniSeed;
+import seed.SteimDecoder;
 import seed.SteimException;
 
 public class Display
@@ -356,7 +357,7 @@ class PlotFrame extends JFrame implements ActionListener
                                 // This is what we wanted, plot it
                                 try
                                 {
-                                newData = seedRecord.decomp();
+                                newData = seedRecord.decomp(steimDecoder);
                                 }
                                 catch(SteimException e)
                                 {
@@ -577,5 +578,6 @@ class PlotFrame extends JFrame implements ActionListener
     private TransferTask        transferTask;
 
     private MiniSeed            seedRecord;
+    private SteimDecoder        steimDecoder = new SteimDecoder(); // only used on the event dispatch thread
 
 } // class PlotFrame
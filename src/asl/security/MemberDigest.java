@@ -19,6 +19,9 @@
 package asl.security;
 
 import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
@@ -38,6 +41,13 @@ public abstract class MemberDigest
     private MessageDigest digest = null;
     private ByteBuffer raw = null;
     private String str = null;
+    // True until the digest is computed, and again whenever a member changes (see markDigestDirty())
+    private boolean dirty = true;
+
+    // Scratch space for digesting arrays of primitives (see addToDigest(int[], int, int)),
+    // only held while the digest is computed
+    private static final int BULK_SIZE = 8192;
+    private ByteBuffer bulk = null;
 
     /**
      * Constructor.
@@ -60,18 +70,47 @@ public abstract class MemberDigest
     protected abstract void addDigestMembers();
 
     private synchronized void computeDigest() {
+        if (!dirty) {
+            return;
+        }
         digest.reset();
         addDigestMembers();
+        bulk = null;
         raw = ByteBuffer.wrap(digest.digest());
         str = Hex.byteArrayToHexString(raw.array());
+        dirty = false;
+    }
+
+    /**
+     * Subclasses must call this whenever a member they add in addDigestMembers() changes.
+     * Until then the digest is computed once and the same ByteBuffer is returned each time.
+     */
+    protected synchronized void markDigestDirty() {
+        dirty = true;
+    }
+
+    /**
+     * Takes the digest of another object with the same digest members (e.g., a copy which
+     * shares them) rather than computing it again.
+     */
+    protected void copyDigest(MemberDigest other) {
+        ByteBuffer otherRaw = other.getDigestBytes();
+        String otherStr = other.getDigestString();
+        synchronized (this) {
+            raw = otherRaw;
+            str = otherStr;
+            dirty = false;
+        }
     }
 
-    public ByteBuffer getDigestBytes() {
+    // Metrics may digest the same member (e.g., a channel's DataSet) at once, so the
+    // result is read under the same lock it was computed with
+    public synchronized ByteBuffer getDigestBytes() {
         computeDigest();
         return raw;
     }
 
-    public String getDigestString() {
+    public synchronized String getDigestString() {
         computeDigest();
         return str;
     }
@@ -121,6 +160,67 @@ public abstract class MemberDigest
         addToDigest(ByteBuffer.allocate(8).putDouble(data));
     }
 
+    // Methods for adding arrays of primitives to the digest. Each value is added in the
+    // same (big-endian) byte order as the single value methods above, so the digest is
+    // identical, but a bufferful at a time rather than boxing + wrapping every value.
+    private ByteBuffer getBulkBuffer() {
+        if (bulk == null) {
+            bulk = ByteBuffer.allocate(BULK_SIZE);
+        }
+        return bulk;
+    }
+
+    protected void addToDigest(int[] data, int offset, int length) {
+        ByteBuffer buffer = getBulkBuffer();
+        IntBuffer view = buffer.asIntBuffer();
+        while (length > 0) {
+            int count = Math.min(length, view.capacity());
+            view.clear();
+            view.put(data, offset, count);
+            addToDigest(buffer.array(), 0, count * 4);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    protected void addToDigest(int[] data) {
+        addToDigest(data, 0, data.length);
+    }
+
+    protected void addToDigest(long[] data, int offset, int length) {
+        ByteBuffer buffer = getBulkBuffer();
+        LongBuffer view = buffer.asLongBuffer();
+        while (length > 0) {
+            int count = Math.min(length, view.capacity());
+            view.clear();
+            view.put(data, offset, count);
+            addToDigest(buffer.array(), 0, count * 8);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    protected void addToDigest(long[] data) {
+        addToDigest(data, 0, data.length);
+    }
+
+    protected void addToDigest(double[] data, int offset, int length) {
+        ByteBuffer buffer = getBulkBuffer();
+        DoubleBuffer view = buffer.asDoubleBuffer();
+        while (length > 0) {
+            int count = Math.min(length, view.capacity());
+            view.clear();
+            view.put(data, offset, count);
+            addToDigest(buffer.array(), 0, count * 8);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    protected void addToDigest(double[] data) {
+        addToDigest(data, 0, data.length);
+    }
+
     public static ByteBuffer multiDigest(Collection<MemberDigest> digests) {
         ArrayList<ByteBuffer> buffers = new ArrayList<ByteBuffer>(digests.size());
         for (MemberDigest digest: digests) {
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2012, United States Geological Survey or
+ * third-party contributors as indicated by the @author tags.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/  >.
+ *
+ */
+package asl.seedscan;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Hashtable;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+/**
+ * An on-disk cache of archive file digests and of the inputs of each 
+ * station-day which was successfully scanned.
+ *
+ * A file's content digest is kept along with its size and modification
+ * time, and is only trusted while both still match the file on disk. The
+ * digests are those computed by the SeedSplitter while reading each file
+ * (see SeedSplitter.getDigests()), so filling the cache costs no extra I/O.
+ *
+ * A day's fingerprint combines the file digests with the metadata and the
+ * metrics which were computed (see Scanner). When a later scan finds the
+ * same fingerprint, the day's data does not need to be decoded again.
+ *
+ * Each Scanner owns the cache file for its station. Day digests are only
+ * recorded once the injector has committed the day's results, on the 
+ * injector thread, so the cache is synchronized.
+ */
+public class DigestCache
+{
+    private static final Logger logger = Logger.getLogger("asl.seedscan.DigestCache");
+
+    private File file;
+    private boolean modified = false;
+    private Hashtable<String, FileEntry> files = new Hashtable<String, FileEntry>();
+    private Hashtable<String, String> days = new Hashtable<String, String>();
+
+    private static class FileEntry
+    {
+        private long size;
+        private long modifiedTime;
+        private String digest;
+
+        private FileEntry(long size, long modifiedTime, String digest)
+        {
+            this.size = size;
+            this.modifiedTime = modifiedTime;
+            this.digest = digest;
+        }
+    }
+
+    public DigestCache(File file)
+    {
+        this.file = file;
+        load();
+    }
+
+/**
+ *  Return the cached content digest of a file, or null if the file is not in the
+ *  cache or its size or modification time has changed since it was digested.
+ */
+    public synchronized String getFileDigest(File dataFile)
+    {
+        FileEntry entry = files.get(dataFile.getAbsolutePath());
+        if (entry == null) {
+            return null;
+        }
+        if ((entry.size != dataFile.length()) || (entry.modifiedTime != dataFile.lastModified())) {
+            return null;
+        }
+        return entry.digest;
+    }
+
+/**
+ *  Record a file's content digest. The size and modification time must be taken before
+ *  the file was read: if the file changed while it was read, they no longer match it, and
+ *  the digest is never returned.
+ */
+    public synchronized void putFileDigest(File dataFile, long size, long modifiedTime, String digest)
+    {
+        if (digest == null) {
+            return;
+        }
+        files.put(dataFile.getAbsolutePath(), new FileEntry(size, modifiedTime, digest));
+        modified = true;
+    }
+
+/**
+ *  Return the fingerprint of the last successful scan of this day, or null.
+ */
+    public synchronized String getDayDigest(String day)
+    {
+        return days.get(day);
+    }
+
+    public synchronized void putDayDigest(String day, String digest)
+    {
+        days.put(day, digest);
+        modified = true;
+    }
+
+    public synchronized void removeDayDigest(String day)
+    {
+        if (days.remove(day) != null) {
+            modified = true;
+        }
+    }
+
+/**
+ *  Write the cache if it has changed. The cache is written to a temporary file which
+ *  then replaces the old one, so an interrupted write never leaves a truncated cache.
+ */
+    public synchronized void save()
+    {
+        if (!modified) {
+            return;
+        }
+        File parent = file.getAbsoluteFile().getParentFile();
+        if ((parent != null) && !parent.exists()) {
+            parent.mkdirs();
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        BufferedWriter writer = null;
+        try {
+            writer = new BufferedWriter(new FileWriter(temp));
+            for (String path : new TreeSet<String>(files.keySet())) {
+                FileEntry entry = files.get(path);
+                writer.write(String.format("F\t%d\t%d\t%s\t%s\n", entry.size, entry.modifiedTime, entry.digest, path));
+            }
+            for (String day : new TreeSet<String>(days.keySet())) {
+                writer.write(String.format("D\t%s\t%s\n", day, days.get(day)));
+            }
+            writer.close();
+            writer = null;
+            if (file.exists() && !file.delete()) {
+                throw new IOException("Unable to replace " + file);
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException("Unable to rename " + temp + " to " + file);
+            }
+            modified = false;
+        }
+        catch (IOException e) {
+            logger.warning(String.format("Unable to write digest cache [%s]: %s", file, e.getMessage()));
+        }
+        finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                }
+                catch (IOException e) {;}
+            }
+        }
+    }
+
+    private void load()
+    {
+        if (!file.exists()) {
+            return;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(file));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] args = line.split("\t", 5);
+                try {
+                    if (args[0].equals("F") && (args.length == 5)) {
+                        files.put(args[4], new FileEntry(Long.parseLong(args[1]), Long.parseLong(args[2]), args[3]));
+                    }
+                    else if (args[0].equals("D") && (args.length == 3)) {
+                        days.put(args[1], args[2]);
+                    }
+                    else {
+                        logger.warning(String.format("Ignoring invalid line in digest cache [%s]", file));
+                    }
+                }
+                catch (NumberFormatException e) {
+                    logger.warning(String.format("Ignoring invalid line in digest cache [%s]", file));
+                }
+            }
+        }
+        catch (IOException e) {
+            logger.warning(String.format("Unable to read digest cache [%s]: %s --> Start with an empty cache", file, e.getMessage()));
+            files.clear();
+            days.clear();
+        }
+        finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                }
+                catch (IOException e) {;}
+            }
+        }
+    }
+}
@@ -31,6 +31,16 @@ public class Scan
     private int startDay;
     private int daysToScan;
     private int startDate;
+    private int threads = 1;
+    private int splitThreads = 1;
+    private String digestCacheDir = null;
+    private String metadataCacheDir = null;
+    private int nextDayHours = 4;
+    private int prefetchDays = 1;
+    private int metricThreads = 1;
+    private int spectraCacheMB = 16;
+    private boolean lazyDecode = false;
+    private boolean compressData = false;
     private ArrayList<MetricWrapper> metrics;
 
     private Filter networks = null;
@@ -141,6 +151,116 @@ public class Scan
         return daysToScan;
     }
 
+    // number of stations to scan concurrently
+    public void setThreads(int threads)
+    {
+        this.threads = threads;
+    }
+
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    // number of files each Scanner may decode concurrently
+    public void setSplitThreads(int splitThreads)
+    {
+        this.splitThreads = splitThreads;
+    }
+
+    public int getSplitThreads()
+    {
+        return splitThreads;
+    }
+
+    // directory of per-station file + day digests (null --> always decode)
+    public void setDigestCacheDir(String digestCacheDir)
+    {
+        this.digestCacheDir = digestCacheDir;
+    }
+
+    public String getDigestCacheDir()
+    {
+        return digestCacheDir;
+    }
+
+    // directory of decoded dataless blockettes, indexed by station (see BlocketteCache; null --> always read the dataless)
+    public void setMetadataCacheDir(String metadataCacheDir)
+    {
+        this.metadataCacheDir = metadataCacheDir;
+    }
+
+    public String getMetadataCacheDir()
+    {
+        return metadataCacheDir;
+    }
+
+    // hours at the start of the next day kept for windows which cross midnight
+    public void setNextDayHours(int nextDayHours)
+    {
+        this.nextDayHours = nextDayHours;
+    }
+
+    public int getNextDayHours()
+    {
+        return nextDayHours;
+    }
+
+    // days read + split ahead of the day being scanned (0 --> none)
+    public void setPrefetchDays(int prefetchDays)
+    {
+        this.prefetchDays = prefetchDays;
+    }
+
+    public int getPrefetchDays()
+    {
+        return prefetchDays;
+    }
+
+    // metrics of a station-day computed at once (1 --> one after the other)
+    public void setMetricThreads(int metricThreads)
+    {
+        this.metricThreads = metricThreads;
+    }
+
+    public int getMetricThreads()
+    {
+        return metricThreads;
+    }
+
+    // MB of a station-day's channel segment spectra kept for its PSDs (0 --> always compute on demand)
+    public void setSpectraCacheMB(int spectraCacheMB)
+    {
+        this.spectraCacheMB = spectraCacheMB;
+    }
+
+    public int getSpectraCacheMB()
+    {
+        return spectraCacheMB;
+    }
+
+    // decode each channel only once a metric asks for it (false --> decode every channel up front)
+    public void setLazyDecode(boolean lazyDecode)
+    {
+        this.lazyDecode = lazyDecode;
+    }
+
+    public boolean getLazyDecode()
+    {
+        return lazyDecode;
+    }
+
+    // keep the decoded samples compressed in memory (smaller, but slower to read)
+    public void setCompressData(boolean compressData)
+    {
+        this.compressData = compressData;
+    }
+
+    public boolean getCompressData()
+    {
+        return compressData;
+    }
+
     // network filter
     public void setNetworks(Filter networks)
     {
@@ -18,34 +18,191 @@
  */
 package asl.seedscan;
 
-import java.util.logging.ConsoleHandler;
-import java.util.logging.Handler;
-import java.util.logging.Level;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
+import asl.concurrent.TaskThread;
 import asl.metadata.*;
+import asl.seedscan.database.MetricInjector;
+import asl.seedscan.database.MetricReader;
 
+/**
+ * Scans a list of stations using a fixed-size pool of Scanner threads.
+ *
+ * The pool size comes from cfg:threads in the scan configuration, so at most
+ * that many stations (and their decoded data) are held in memory at once.
+ * Each Scanner decodes the next days it will scan (up to cfg:prefetch_days)
+ * on a second pool of the same size, while it computes the current day's
+ * metrics. The shared MetricReader and MetricInjector threads are started
+ * here and are only halted once every Scanner has finished, so that all
+ * queued injections are written before the process exits.
+ */
 public class ScanManager
 implements Runnable
 {
     private static final Logger logger = Logger.getLogger("asl.seedscan.ScanManager");
 
     private Scan scan = null;
+    private MetricReader reader = null;
+    private MetricInjector injector = null;
+    private ArrayList<Station> stations = null;
 
-    public ScanManager(Scan scan)
+    public ScanManager(MetricReader reader, MetricInjector injector, ArrayList<Station> stations, Scan scan)
     {
+        this.reader = reader;
+        this.injector = injector;
+        this.stations = stations;
         this.scan = scan;
     }
 
     public void run()
     {
-        // TODO: Manage a thread pool of Scanners
+        Thread readerThread = new Thread(reader, "MetricReader");
+        readerThread.start();
+        logger.info("Reader thread started.");
+
+        Thread injectorThread = new Thread(injector, "MetricInjector");
+        injectorThread.start();
+        logger.info("Injector thread started.");
+
+        int threads = Math.max(1, Math.min(scan.getThreads(), stations.size()));
+        logger.info(String.format("Processing %d stations with %d scanner threads...", stations.size(), threads));
+
+        // Stations that share a dataless volume (e.g., II.dataless) read it once between them
+        DatalessCache.setScheduledStations(stations);
+        if (scan.getMetadataCacheDir() != null) {
+            DatalessCache.setCacheDir(new File(scan.getMetadataCacheDir()));
+        }
+
+        ExecutorService prefetchPool = null;
+        if (scan.getPrefetchDays() > 0) {
+            prefetchPool = Executors.newFixedThreadPool(threads, new ScannerThreadFactory("Prefetch-"));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads, new ScannerThreadFactory("Scanner-"));
+        ArrayList<StationTask> tasks = new ArrayList<StationTask>(stations.size());
+        for (Station station : stations) {
+            Scanner scanner = new Scanner(reader, injector, station, scan);
+            scanner.setPrefetchExecutor(prefetchPool);
+            StationTask task = new StationTask(scanner);
+            task.future = pool.submit(task);
+            tasks.add(task);
+        }
+        pool.shutdown();
+
+        // Wait for every station in submission order so the summary lines up with the station list
+        boolean interrupted = false;
+        for (StationTask task : tasks) {
+            try {
+                task.future.get();
+            } catch (InterruptedException ex) {
+                logger.warning("Interrupted while waiting for scanners --> cancel remaining stations");
+                pool.shutdownNow();
+                interrupted = true;
+                break;
+            } catch (ExecutionException ex) {
+                task.error = ex.getCause();
+                logger.severe(String.format("Scan of station [%s] failed: %s", task.scanner.getStation(), ex.getCause()));
+            }
+        }
+
+        if (prefetchPool != null) {
+            prefetchPool.shutdownNow();
+        }
+
+        haltThread(injector, injectorThread, "injector");
+        haltThread(reader, readerThread, "reader");
+
+        printSummary(tasks);
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+/**
+ *  Queue a HALT behind any pending requests and wait for the thread to drain them.
+ */
+    private void haltThread(TaskThread<?> taskThread, Thread thread, String name)
+    {
+        try {
+            taskThread.halt();
+            logger.info(String.format("All stations processed. Waiting for %s thread to finish...", name));
+            thread.join();
+            logger.info(String.format("The %s thread halted.", name));
+        } catch (InterruptedException ex) {
+            logger.warning(String.format("The %s thread was interrupted while attempting to complete requests.", name));
+            thread.interrupt();
+        }
+    }
+
+    private void printSummary(ArrayList<StationTask> tasks)
+    {
+        int failed = 0;
+        System.out.format("== ScanManager: Station Summary\n");
+        for (StationTask task : tasks) {
+            String status;
+            if (task.error != null) {
+                status = "FAILED (" + task.error + ")";
+                failed++;
+            }
+            else if (!task.future.isDone() || task.future.isCancelled()) {
+                status = "CANCELLED";
+                failed++;
+            }
+            else {
+                status = "OK";
+            }
+            System.out.format("==   %-10s %8.1f sec  %s\n", task.scanner.getStation(), task.elapsed / 1000., status);
+        }
+        System.out.format("== ScanManager: %d of %d stations completed successfully\n", tasks.size() - failed, tasks.size());
+    }
+
+    private class StationTask
+    implements Runnable
+    {
+        private Scanner scanner;
+        private Future<?> future = null;
+        private Throwable error = null;
+        private volatile long elapsed = 0;
+
+        private StationTask(Scanner scanner)
+        {
+            this.scanner = scanner;
+        }
+
+        public void run()
+        {
+            long start = System.currentTimeMillis();
+            try {
+                scanner.scan();
+            } finally {
+                elapsed = System.currentTimeMillis() - start;
+            }
+        }
+    }
+
+    private static class ScannerThreadFactory
+    implements ThreadFactory
+    {
+        private AtomicInteger count = new AtomicInteger(0);
+        private String prefix;
+
+        private ScannerThreadFactory(String prefix)
+        {
+            this.prefix = prefix;
+        }
 
-        /*
-        for (Station station: stations) {
-            Scanner scanner = new Scanner(database, station, scan);
-            scanner.scan();
+        public Thread newThread(Runnable runnable)
+        {
+            return new Thread(runnable, prefix + count.incrementAndGet());
         }
-        */
     }
 }
@@ -26,6 +26,8 @@ import java.util.TreeSet;
 import java.util.Enumeration;
 import java.io.FilenameFilter;
 import java.io.PrintWriter;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 import java.nio.ByteBuffer;
 import asl.util.Hex;
@@ -36,17 +38,30 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.lang.Runnable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.GregorianCalendar;
 import java.util.Calendar;
 import java.util.Hashtable;
 import java.util.logging.Logger;
 import java.util.concurrent.BlockingQueue;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import asl.concurrent.ComputeOnceTable;
 import asl.concurrent.FallOffQueue;
 import asl.seedsplitter.DataSet;
+import asl.seedsplitter.InvalidFilterException;
 import asl.seedsplitter.SeedSplitProgress;
 import asl.seedsplitter.SeedSplitter;
 import asl.seedscan.database.MetricDatabase;
+import asl.seedscan.database.InjectionGroup;
 import asl.seedscan.database.MetricInjector;
 import asl.seedscan.database.MetricReader;
 import asl.seedscan.event.*;
@@ -74,6 +89,26 @@ public class Scanner
 
     private FallOffQueue<SeedSplitProgress> progressQueue;
 
+ // Reads + splits the days to be scanned next while this one's metrics run (see prefetch())
+    private ExecutorService prefetchExecutor = null;
+    private boolean ownPrefetchExecutor = false;
+    private Hashtable<Long, DayPrefetch> prefetches = new Hashtable<Long, DayPrefetch>();
+
+ // Runs a day's independent metrics concurrently (null --> one after the other, see processMetrics())
+    private ExecutorService metricExecutor = null;
+
+ // Remembers the input digests of unchanged station-days (null --> always decode)
+    private DigestCache digestCache = null;
+
+ // Channel bands + locations needed by the configured metrics (null --> any)
+    private ArrayList<String> channelBands = null;
+    private ArrayList<String> locationCodes = null;
+ // True if every configured metric reads only the record headers
+    private boolean headerOnly = false;
+
+ // Archive files are named by location + channel, e.g., "00_LHZ.512.seed"
+    private static final Pattern archiveFilePattern = Pattern.compile("^([A-Za-z0-9]{0,2})_([A-Za-z0-9]{3})\\..*seed$", Pattern.CASE_INSENSITIVE);
+
     private static String eventsDir = null;
     private static Hashtable<String, EventCMT> oneDayEventCMTs = null;
 
@@ -88,11 +123,45 @@ public class Scanner
         this.progressQueue = new FallOffQueue<SeedSplitProgress>(8);
     }
 
+    public Station getStation() {
+        return station;
+    }
+
+/**
+ *  Prefetch days on a pool shared with other Scanners, rather than on a thread of its own
+ */
+    public void setPrefetchExecutor(ExecutorService prefetchExecutor) {
+        this.prefetchExecutor = prefetchExecutor;
+    }
+
     public void run() {
         scan();
     }
 
     public void scan()
+    {
+        try {
+            scanStation();
+        }
+        finally {
+            cancelPrefetches(null);
+            if (ownPrefetchExecutor) {
+                prefetchExecutor.shutdownNow();
+                prefetchExecutor = null;
+                ownPrefetchExecutor = false;
+            }
+            if (metricExecutor != null) {
+                metricExecutor.shutdownNow();
+                metricExecutor = null;
+            }
+         // Lets a dataless volume shared by several stations be evicted once they're all scanned
+            if (metaGen != null) {
+                metaGen.release();
+            }
+        }
+    }
+
+    private void scanStation()
     {
         GregorianCalendar timestamp = new GregorianCalendar(TimeZone.getTimeZone("GMT") );
 
@@ -120,6 +189,27 @@ public class Scanner
             return;
         }
 
+     // Only decode the channels (and samples) that the configured metrics will use
+        setSplitOptions();
+
+     // Station-days whose files, metadata + metrics are unchanged since the last scan are skipped
+        if (scan.getDigestCacheDir() != null) {
+            File cacheDir = new File(scan.getDigestCacheDir());
+            cacheDir.mkdirs();
+            digestCache = new DigestCache(new File(cacheDir, station.getNetwork() + "_" + station.getStation() + ".digests"));
+        }
+
+     // Decode the next days to scan while the metrics run (a single station gets a thread of its own)
+        if (scan.getPrefetchDays() > 0 && prefetchExecutor == null) {
+            prefetchExecutor = Executors.newSingleThreadExecutor();
+            ownPrefetchExecutor = true;
+        }
+
+     // Compute up to cfg:metric_threads of a day's metrics at once
+        if (scan.getMetricThreads() > 1 && metricExecutor == null) {
+            metricExecutor = Executors.newFixedThreadPool(scan.getMetricThreads());
+        }
+
      // CMT Event loader - use to load events for each day
         EventLoader eventLoader = new EventLoader( scan.getEventsDir() );
 
@@ -133,12 +223,19 @@ public class Scanner
      // :
      // daysToScan - 1
 
+     // True if currentMetricData was read for the day after the one being scanned
+        boolean nextDayLoaded = false;
+
         for (int i=0; i < scan.getDaysToScan(); i++) {
             if (i != 0) {
                 timestamp.setTimeInMillis(timestamp.getTimeInMillis() - dayMilliseconds);
             }
+            boolean haveNextDay = nextDayLoaded;
+            nextDayLoaded = false;
             GregorianCalendar nextDayTimestamp = (GregorianCalendar)timestamp.clone();
             nextDayTimestamp.setTimeInMillis( timestamp.getTimeInMillis() + dayMilliseconds);
+         // Days before this one were skipped, so their prefetches are no longer needed
+            cancelPrefetches(timestamp);
 
 // [1] Get all the channel metadata for this station, for this day
             StationMeta stnMeta = metaGen.getStationMeta(station, timestamp); 
@@ -168,25 +265,51 @@ public class Scanner
             }
 
 
-// [2] Read in all the seed files for this station, for this day & for the next day
-//     If this isn't the first day of the scan then simply copy current into next so we
-//     don't have to reread all of the seed files in
+// Skip the day if nothing it depends on has changed since it was last scanned + injected
+            String dayKey = EpochData.epochToDateString(timestamp);
+            if (digestCache != null && injector.isConnected()) {
+                String dayDigest = getDayDigest(timestamp, nextDayTimestamp, stnMeta, eventCMTs);
+                if (dayDigest != null && dayDigest.equals(digestCache.getDayDigest(dayKey))) {
+                    System.out.format("== Scanner: Station=%s Day=%s is unchanged since the last scan --> Skipping\n", 
+                                       station, dayKey);
+                    currentMetricData = null;
+                    continue;
+                }
+            }
 
-            if (i == 0) {
-                nextMetricData    = getMetricData(nextDayTimestamp);
+// [2] Read in all the seed files for this station, for this day & the start of the next day
+//     Windows that cross midnight only read the first hours of the next day (see MetricData.getSpillOver),
+//     so only those are kept. If the day after this one was just scanned then its head was
+//     kept at the end of that scan, so we don't have to reread the seed files in
+
+            long nextDayEndTime = (nextDayTimestamp.getTimeInMillis() + scan.getNextDayHours() * 3600000L) * 1000;
+            if (haveNextDay) {
+                nextMetricData    = currentMetricData;
             }
             else {
-              // Need to null out ref to next day before passing currentMetricData to avoid chaining refs
-                if (currentMetricData != null) {
-                    currentMetricData.setNextMetricDataToNull();
-                    nextMetricData    = currentMetricData;
+              // Only waveform metrics look into the next day
+                nextMetricData    = null;
+                if (!headerOnly) {
+                    nextMetricData    = getMetricData(nextDayTimestamp, nextDayEndTime);
                 }
             }
             currentMetricData = null;
-            currentMetricData = getMetricData(timestamp);
+            DayPrefetch prefetch = prefetches.remove(timestamp.getTimeInMillis());
+            if (prefetch != null) {
+                currentMetricData = getMetricData(timestamp, prefetch);
+            }
+            else {
+                currentMetricData = getMetricData(timestamp);
+            }
+            nextDayLoaded = true;
+
+         // Start reading the next days to scan while this day's metrics run
+            prefetch(timestamp, i);
 
             if (currentMetricData != null) {     // This doesn't mean nextMetricData isn't null!
                 currentMetricData.setNextMetricData(nextMetricData);
+             // Fetch all of the day's stored digests at once rather than one query per metric + channel
+                currentMetricData.loadValueDigests();
             }
 
             System.out.format("== Scanner: totalMemory=[%d] freeMemory=[%d] usedMemory=[%d]\n", runtime.totalMemory()/MB,
@@ -195,8 +318,13 @@ public class Scanner
 
 // [3] Loop over Metrics to compute, for this station, for this day
 
-            Hashtable<CrossPowerKey, CrossPower> crossPowerMap = null;
+         // Every metric shares one map of the cross powers computed this day, so that metrics asking for the
+         //   same channel pair (possibly at the same time, see processMetrics()) compute it only once
+            ComputeOnceTable<CrossPowerKey, CrossPower> crossPowerMap = new ComputeOnceTable<CrossPowerKey, CrossPower>();
+            boolean injected = injector.isConnected();
+            InjectionGroup dayResults = new InjectionGroup();
 
+            ArrayList<Metric> metrics = new ArrayList<Metric>();
             for (MetricWrapper wrapper: scan.getMetrics()) {
                 Metric metric = wrapper.getNewInstance();
 
@@ -208,22 +336,21 @@ public class Scanner
                             metric.setEventSynthetics( eventSynthetics );
                         }
                     }
-
-   // Hand off the crossPowerMap from metric to metric, adding to it each time
-                    if (crossPowerMap != null) {
-                        metric.setCrossPowerMap(crossPowerMap);
-                    }
-                    metric.process();
-   // Save the current crossPowerMap for the next metric:
-                    crossPowerMap = metric.getCrossPowerMap();
+                    metric.setCrossPowerMap(crossPowerMap);
                 }
                 else if (metric.getClass().getName().contains("AvailabilityMetric")){
                     metric.setData( new MetricData(stnMeta) );
-                    metric.process();
                 }
                 else { // No data for this station + day
                     continue;
                 }
+                metrics.add(metric);
+            }
+
+            processMetrics(metrics);
+
+         // Results are printed + injected in the configured order, however the metrics were run
+            for (Metric metric : metrics) {
 
    // This is a little convoluted: calibration.getResult() returns a MetricResult, which may contain many values
    //   in a Hashtable<String,String> = map.
@@ -243,9 +370,10 @@ public class Scanner
                     }
                     if (injector.isConnected()) {
                         try {
-                    	    injector.inject(results);
+                    	    injector.inject(results, dayResults);
                         } catch (InterruptedException ex) {
                     	    logger.warning(String.format("Interrupted while trying to inject metric [%s]", metric.toString()));
+                            injected = false;
                         }
                     }
                     else {
@@ -254,8 +382,110 @@ public class Scanner
                 }
             } // end loop over metrics
 
+         // Only a day whose results were all committed can be skipped next time, so its digest is
+         //   recorded once the injector has written every one of them (which may be after this scan)
+            if (digestCache != null) {
+                final String day = dayKey;
+                final String dayDigest = injected ? getDayDigest(timestamp, nextDayTimestamp, stnMeta, eventCMTs) : null;
+                if (dayDigest != null) {
+                    dayResults.close(new InjectionGroup.Listener() {
+                        public void injected(boolean committed) {
+                            if (committed) {
+                                digestCache.putDayDigest(day, dayDigest);
+                            }
+                            else {
+                                logger.warning(String.format("Not all results of Station=%s Day=%s were committed --> Rescan it next time", 
+                                                             station, day));
+                                digestCache.removeDayDigest(day);
+                            }
+                            digestCache.save();
+                        }
+                    });
+                }
+                else {
+                    digestCache.removeDayDigest(dayKey);
+                    digestCache.save();
+                }
+            }
+
+         // Retire the full day: the day before it (scanned next) only needs its head
+            nextMetricData = null;
+            if (currentMetricData != null) {
+                currentMetricData.setNextMetricDataToNull();
+                currentMetricData = headerOnly ? null : currentMetricData.getSpillOver(
+                        (timestamp.getTimeInMillis() + scan.getNextDayHours() * 3600000L) * 1000);
+            }
+
         } // end loop over day to scan
-    } // end scan()
+    } // end scanStation()
+
+/**
+ *  Run process() on each of the day's metrics. With cfg:metric_threads > 1 consecutive metrics run
+ *  concurrently, except for those which derive channels (see Metric.derivesChannels()): these change
+ *  the channels the metrics configured after them see, so each one waits for the metrics before it
+ *  to finish and runs on its own. Returns once every metric has finished; if any of them failed,
+ *  the first failure (in the configured order) is rethrown, as it would have been run serially.
+ */
+    private void processMetrics(ArrayList<Metric> metrics) {
+        if (metricExecutor == null) {
+            for (Metric metric : metrics) {
+                metric.process();
+            }
+            return;
+        }
+
+        ArrayList<Future<?>> running = new ArrayList<Future<?>>();
+        for (final Metric metric : metrics) {
+            if (metric.derivesChannels()) {
+                waitForMetrics(running);
+                metric.process();
+            }
+            else {
+                running.add(metricExecutor.submit(new Runnable() {
+                    public void run() {
+                        metric.process();
+                    }
+                }));
+            }
+        }
+        waitForMetrics(running);
+    }
+
+/**
+ *  Wait for every one of the running metrics to finish (clearing the list) and rethrow the first failure
+ */
+    private void waitForMetrics(ArrayList<Future<?>> running) {
+        Throwable failure = null;
+        try {
+            for (Future<?> future : running) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            for (Future<?> future : running) {
+                future.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for metrics of station " + station, e);
+        } finally {
+            running.clear();
+        }
+
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException)failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error)failure;
+        }
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
 
 /**
  *  Return a MetricData object for the station + timestamp
@@ -263,6 +493,14 @@ public class Scanner
  *  attach a MetricReader to the MetricData, otherwise don't
  */
     private MetricData getMetricData(GregorianCalendar timestamp) {
+        return getMetricData(timestamp, Long.MAX_VALUE);
+    }
+
+/**
+ *  Return a MetricData object holding only the records of the day which start before endTime
+ *  (microsecs since 1970)
+ */
+    private MetricData getMetricData(GregorianCalendar timestamp, long endTime) {
 
       //System.out.format("== getMetricData: request data for Station=[%s] Day=[%s]\n", station, EpochData.epochToDateString(timestamp));
 
@@ -270,7 +508,272 @@ public class Scanner
         if (stationMeta == null) {
             return null;
         }
+        return makeMetricData(splitDay(timestamp, endTime), stationMeta);
+
+    } // end getMetricData()
+
+/**
+ *  Return a MetricData object for the station + timestamp, from the seed files read + split
+ *  by a prefetch (see prefetch()). If the prefetch has not started yet (e.g., it is queued behind
+ *  other stations' prefetches) it is cancelled and the day is read here instead.
+ */
+    private MetricData getMetricData(GregorianCalendar timestamp, DayPrefetch prefetch) {
+
+        StationMeta stationMeta = metaGen.getStationMeta(station, timestamp); 
+        if (stationMeta == null) {
+            prefetch.cancel();
+            return null;
+        }
+
+        SeedSplitter splitter = null;
+        if (prefetch.claim()) {
+            splitter = splitDay(timestamp, Long.MAX_VALUE);
+        }
+        else {
+            try {
+                splitter = prefetch.future.get();
+            } catch (ExecutionException e) {
+                logger.warning(String.format("Prefetch of station [%s] day [%s] failed: %s --> Read it again", 
+                               station, EpochData.epochToDateString(timestamp), e.getCause()));
+                splitter = splitDay(timestamp, Long.MAX_VALUE);
+            } catch (InterruptedException e) {
+                logger.warning(String.format("Interrupted while waiting for prefetch of station [%s] day [%s]", 
+                               station, EpochData.epochToDateString(timestamp)));
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        return makeMetricData(splitter, stationMeta);
+    }
+
+/**
+ *  Read + split the seed files for the station + timestamp, keeping only the records which start
+ *  before endTime (microsecs since 1970). Returns null if there are no files for the day.
+ *  This only reads the Scanner's configuration, so prefetches may run it on another thread.
+ */
+    private SeedSplitter splitDay(GregorianCalendar timestamp, long endTime) {
+
+        File[] files = getDayFiles(timestamp);
+        if (files == null) {
+            //System.out.format("== getMetricData: No data found for Day=[%s] Station=[%s]\n", EpochData.epochToDateString(timestamp), station);
+            return null;
+        }
+
+        logger.info(files[0].getParent() + " contains " +files.length+ " files.");
+        progressQueue.clear();
+
+        SeedSplitter splitter = new SeedSplitter(files, progressQueue);
+        splitter.setThreads(scan.getSplitThreads());
+        splitter.setHeaderOnly(headerOnly);
+     // With cfg:lazy_decode the records are only indexed, and each channel is decoded once a metric asks for it
+        splitter.setIndexOnly(scan.getLazyDecode() && !headerOnly);
+        splitter.setCompressed(scan.getCompressData());
+        splitter.setEndTime(endTime);
+        try {
+            if (channelBands != null) {
+                splitter.setFilter(makeFilter(channelBands, "*"), SeedSplitter.CHANNEL);
+            }
+            if (locationCodes != null) {
+                splitter.setFilter(makeFilter(locationCodes, ""), SeedSplitter.LOCATION);
+            }
+        } catch (InvalidFilterException e) {
+            logger.warning(String.format("Unable to filter channels for station [%s]: %s --> Decode all channels", station, e.getMessage()));
+        }
+        splitter.doInBackground();
+        return splitter;
+    }
+
+    private MetricData makeMetricData(SeedSplitter splitter, StationMeta stationMeta) {
+        if (splitter == null) {
+            return null;
+        }
+
+        Hashtable<String,ArrayList<DataSet>> table = null;
+        table = splitter.getTable();
+
+        Hashtable<String,ArrayList<Integer>> qualityTable = null;
+        qualityTable = splitter.getQualityTable();
+
+        Hashtable<String,ArrayList<Blockette320>> calibrationTable = null;
+        calibrationTable = splitter.getCalTable();
+
+     // Remember the file digests computed while splitting, so an unchanged day can be skipped next time
+        if (digestCache != null) {
+            File[] files = splitter.getFiles();
+            String[] digests = splitter.getDigests();
+            long[] sizes = splitter.getFileSizes();
+            long[] modifiedTimes = splitter.getModifiedTimes();
+            for (int i=0; i < files.length; i++) {
+                digestCache.putFileDigest(files[i], sizes[i], modifiedTimes[i], digests[i]);
+            }
+        }
+
+        MetricData metricData = null;
+        if (splitter.getRecordIndex() != null) {
+            metricData = new MetricData(reader, splitter.getRecordIndex(), qualityTable, stationMeta, calibrationTable);
+        }
+        else {
+            metricData = new MetricData(reader, table, qualityTable, stationMeta, calibrationTable);
+        }
+        metricData.setSegmentSpectraLimit(scan.getSpectraCacheMB() * 1024L * 1024L);
+        return metricData;
+    }
+
+/**
+ *  Start reading + splitting the days to be scanned after this one (i.e., the days before it), up to
+ *  cfg:prefetch_days of them, so that decoding them overlaps with computing this day's metrics.
+ *  Days which were injected by an earlier scan are likely to be skipped as unchanged, so they
+ *  are not prefetched (if they have changed after all they are read when they are scanned).
+ */
+    private void prefetch(GregorianCalendar timestamp, int i) {
+        if (prefetchExecutor == null) {
+            return;
+        }
+        for (int k=1; k <= scan.getPrefetchDays() && (i + k) < scan.getDaysToScan(); k++) {
+            GregorianCalendar day = (GregorianCalendar)timestamp.clone();
+            day.setTimeInMillis(timestamp.getTimeInMillis() - k * dayMilliseconds);
+            if (prefetches.containsKey(day.getTimeInMillis())) {
+                continue;
+            }
+            if (digestCache != null && injector.isConnected() &&
+                digestCache.getDayDigest(EpochData.epochToDateString(day)) != null) {
+                continue;
+            }
+            DayPrefetch prefetch = new DayPrefetch(day);
+            prefetch.future = prefetchExecutor.submit(prefetch);
+            prefetches.put(day.getTimeInMillis(), prefetch);
+        }
+    }
+
+/**
+ *  Cancel the prefetches of days after the timestamp (e.g., of days skipped as unchanged),
+ *  or of every day if timestamp is null.
+ */
+    private void cancelPrefetches(GregorianCalendar timestamp) {
+        for (Long key : new ArrayList<Long>(prefetches.keySet())) {
+            if (timestamp == null || key > timestamp.getTimeInMillis()) {
+                prefetches.remove(key).cancel();
+            }
+        }
+    }
+
+/**
+ *  Reads + splits one day's seed files on a prefetch thread. Whichever of the prefetch thread and
+ *  the Scanner claims it first reads the day, so the Scanner never waits for a prefetch which
+ *  has not started yet.
+ */
+    private class DayPrefetch
+    implements Callable<SeedSplitter>
+    {
+        private GregorianCalendar timestamp;
+        private AtomicBoolean claimed = new AtomicBoolean(false);
+        private Future<SeedSplitter> future = null;
+
+        private DayPrefetch(GregorianCalendar timestamp)
+        {
+            this.timestamp = timestamp;
+        }
+
+        private boolean claim()
+        {
+            return claimed.compareAndSet(false, true);
+        }
+
+        private void cancel()
+        {
+            claim();
+            future.cancel(false);
+        }
+
+        public SeedSplitter call()
+        {
+            if (!claim()) {
+                return null;
+            }
+            return splitDay(timestamp, Long.MAX_VALUE);
+        }
+    }
+
+/**
+ *  Return a fingerprint of everything the metrics for this station-day depend on:
+ *  the configured metrics (name, version + arguments), the channel metadata and the
+ *  content digests of this day's (and, for waveform metrics, the next day's) seed files.
+ *  Returns null if the day must be scanned regardless, i.e., if a file has not been
+ *  digested yet, a metric is forced to update or make plots, or there are events this day.
+ */
+    private String getDayDigest(GregorianCalendar timestamp, GregorianCalendar nextDayTimestamp,
+                                StationMeta stnMeta, Hashtable<String, EventCMT> eventCMTs) {
+        if (eventCMTs != null) {
+            return null;
+        }
+        MessageDigest digest = null;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+
+        for (MetricWrapper wrapper: scan.getMetrics()) {
+            Metric metric = wrapper.getNewInstance();
+            if (metric.getForceUpdate() || metric.getMakePlots()) {
+                return null;
+            }
+            StringBuilder identity = new StringBuilder();
+            identity.append(metric.getName()).append(':').append(metric.getVersion());
+            for (String name: new TreeSet<String>(Collections.list(metric.names()))) {
+                try {
+                    identity.append(':').append(name).append('=').append(metric.get(name));
+                } catch (NoSuchFieldException e) {
+                    return null;
+                }
+            }
+            digest.update(identity.toString().getBytes());
+        }
+
+        TreeSet<String> channelDigests = new TreeSet<String>();
+        for (ChannelMeta chanMeta: stnMeta.getChannelHashTable().values()) {
+            channelDigests.add(chanMeta.getDigestString());
+        }
+        for (String channelDigest: channelDigests) {
+            digest.update(channelDigest.getBytes());
+        }
+
+        if (!addFileDigests(digest, timestamp)) {
+            return null;
+        }
+        if (!headerOnly && !addFileDigests(digest, nextDayTimestamp)) {
+            return null;
+        }
+        return Hex.byteArrayToHexString(digest.digest());
+    }
+
+/**
+ *  Add the names + cached content digests of a day's seed files to a day fingerprint.
+ *  Returns false if any of the files has not been digested since it last changed.
+ */
+    private boolean addFileDigests(MessageDigest digest, GregorianCalendar timestamp) {
+        File[] files = getDayFiles(timestamp);
+        digest.update(EpochData.epochToDateString(timestamp).getBytes());
+        if (files == null) {
+            return true;
+        }
+        Arrays.sort(files);
+        for (File file: files) {
+            String fileDigest = digestCache.getFileDigest(file);
+            if (fileDigest == null) {
+                return false;
+            }
+            digest.update(file.getName().getBytes());
+            digest.update(fileDigest.getBytes());
+        }
+        return true;
+    }
 
+/**
+ *  Return the seed files for the station + timestamp that the configured metrics need,
+ *  or null if there are none.
+ */
+    private File[] getDayFiles(GregorianCalendar timestamp) {
         ArchivePath pathEngine = new ArchivePath(timestamp, station);
         String path = pathEngine.makePath(scan.getPathPattern());
         File dir = new File(path);
@@ -286,7 +789,7 @@ public class Scanner
             public boolean accept(File dir, String name) {
                 String lowercaseName = name.toLowerCase();
                 File file = new File(dir + "/" + name);
-                if (lowercaseName.endsWith(".seed") && (file.length() > 0) ) {
+                if (lowercaseName.endsWith(".seed") && (file.length() > 0) && isNeededFile(name) ) {
                     return true;
                 } else {
                     return false;
@@ -322,26 +825,90 @@ public class Scanner
 //      }
 
         if (!dataExists) {
-            //System.out.format("== getMetricData: No data found for Day=[%s] Station=[%s]\n", EpochData.epochToDateString(timestamp), station);
             return null;
         }
+        return files;
+    }
 
-        Hashtable<String,ArrayList<DataSet>> table = null;
-        logger.info(dir.getPath() + " contains " +files.length+ " files.");
-        progressQueue.clear();
-
-        SeedSplitter splitter = new SeedSplitter(files, progressQueue);
-        table = splitter.doInBackground();
-
-        Hashtable<String,ArrayList<Integer>> qualityTable = null;
-        qualityTable = splitter.getQualityTable();
+/**
+ *  Combine the channel bands + location codes needed by each of the configured metrics.
+ *  If any metric may use any band (or location) then all of them are decoded.
+ *  If every metric is header-only then the samples are not decoded at all.
+ */
+    private void setSplitOptions() {
+        ArrayList<String> bands = new ArrayList<String>();
+        ArrayList<String> locations = new ArrayList<String>();
+        boolean allBands = false;
+        boolean allLocations = false;
+        boolean allHeaderOnly = (scan.getMetrics().size() > 0);
+
+        for (MetricWrapper wrapper: scan.getMetrics()) {
+            Metric metric = wrapper.getNewInstance();
+            if (!metric.isHeaderOnly()) {
+                allHeaderOnly = false;
+            }
+            String[] metricBands = metric.getChannelBands();
+            if (metricBands == null) {
+                allBands = true;
+            }
+            else {
+                for (String band : metricBands) {
+                    if (!bands.contains(band)) {
+                        bands.add(band);
+                    }
+                }
+            }
+            String[] metricLocations = metric.getLocationCodes();
+            if (metricLocations == null) {
+                allLocations = true;
+            }
+            else {
+                for (String location : metricLocations) {
+                    if (!locations.contains(location)) {
+                        locations.add(location);
+                    }
+                }
+            }
+        }
 
-        Hashtable<String,ArrayList<Blockette320>> calibrationTable = null;
-        calibrationTable = splitter.getCalTable();
+        channelBands  = allBands ? null : bands;
+        locationCodes = allLocations ? null : locations;
+        headerOnly    = allHeaderOnly;
+        logger.info(String.format("Station [%s]: decode channel bands=%s locations=%s headerOnly=%s", station,
+                    (channelBands == null) ? "[all]" : channelBands, (locationCodes == null) ? "[all]" : locationCodes, headerOnly));
+    }
 
-        return new MetricData(reader, table, qualityTable, stationMeta, calibrationTable);
+/**
+ *  Return false if the file name says it only holds channels that no configured metric uses.
+ *  Files not named like the archive (e.g., "00_LHZ.512.seed") are always read, and their
+ *  records are filtered by the SeedSplitter instead.
+ */
+    private boolean isNeededFile(String name) {
+        Matcher matcher = archiveFilePattern.matcher(name);
+        if (!matcher.matches()) {
+            return true;
+        }
+        String location = matcher.group(1).equals("") ? "--" : matcher.group(1);
+        String band     = matcher.group(2).substring(0,2).toUpperCase();
+        if ((channelBands != null) && !channelBands.contains(band)) {
+            return false;
+        }
+        if ((locationCodes != null) && !locationCodes.contains(location)) {
+            return false;
+        }
+        return true;
+    }
 
-    } // end getMetricData()
+    private static String makeFilter(ArrayList<String> codes, String suffix) {
+        StringBuilder filter = new StringBuilder();
+        for (String code : codes) {
+            if (filter.length() > 0) {
+                filter.append(",");
+            }
+            filter.append(code).append(suffix);
+        }
+        return filter.toString();
+    }
 
 
 }
@@ -257,6 +257,36 @@ public class SeedScan
                 if (scanCfg.getStartDate() != null) {
                     scan.setStartDate(scanCfg.getStartDate().intValue());
                 }
+                if (scanCfg.getThreads() != null) {
+                    scan.setThreads(scanCfg.getThreads().intValue());
+                }
+                if (scanCfg.getSplitThreads() != null) {
+                    scan.setSplitThreads(scanCfg.getSplitThreads().intValue());
+                }
+                if (scanCfg.getDigestCache() != null) {
+                    scan.setDigestCacheDir(scanCfg.getDigestCache());
+                }
+                if (scanCfg.getMetadataCache() != null) {
+                    scan.setMetadataCacheDir(scanCfg.getMetadataCache());
+                }
+                if (scanCfg.getNextDayHours() != null) {
+                    scan.setNextDayHours(scanCfg.getNextDayHours().intValue());
+                }
+                if (scanCfg.getPrefetchDays() != null) {
+                    scan.setPrefetchDays(scanCfg.getPrefetchDays().intValue());
+                }
+                if (scanCfg.getMetricThreads() != null) {
+                    scan.setMetricThreads(scanCfg.getMetricThreads().intValue());
+                }
+                if (scanCfg.getSpectraCacheMb() != null) {
+                    scan.setSpectraCacheMB(scanCfg.getSpectraCacheMb().intValue());
+                }
+                if (scanCfg.isLazyDecode() != null) {
+                    scan.setLazyDecode(scanCfg.isLazyDecode().booleanValue());
+                }
+                if (scanCfg.isCompressData() != null) {
+                    scan.setCompressData(scanCfg.isCompressData().booleanValue());
+                }
 
                 for (MetricT met: scanCfg.getMetrics().getMetric()) {
                     try {
@@ -335,9 +365,6 @@ public class SeedScan
         }
         scan = scans.get("daily");
 
- // Really the scan for each station will be handled by ScanManager using thread pools
- // For now we're just going to do it here:
-
 // Set getStationList = false if you want to manually control the StationList below ...
         Boolean getStationList = true;
         //getStationList = false;
@@ -365,50 +392,8 @@ public class SeedScan
             System.out.format("== SeedScan: Got station:[%s]\n", station);
         }
 
-        Thread readerThread = new Thread(reader);
-        readerThread.start();
-        logger.info("Reader thread started.");
-        
-        Thread injectorThread = new Thread(injector);
-        injectorThread.start();
-        logger.info("Injector thread started.");
-        
-        logger.info("Processing stations...");
-        for (Station station: stations) {
-            Scanner scanner = new Scanner(reader, injector, station, scan);
-            scanner.scan();
-        }
-        
-        try {
-	        injector.halt();
-	        logger.info("All stations processed. Waiting for injector thread to finish...");
-            synchronized(injectorThread) {
-	            //injectorThread.wait();
-	            injectorThread.interrupt();
-            }
-	        logger.info("Injector thread halted.");
-        } catch (InterruptedException ex) {
-        	logger.warning("The injector thread was interrupted while attempting to complete requests.");
-        }
-        
-        try {
-	        reader.halt();
-	        logger.info("All stations processed. Waiting for reader thread to finish...");
-            synchronized(readerThread) {
-	            //readerThread.wait();
-	            readerThread.interrupt();
-            }
-	        logger.info("Reader thread halted.");
-        } catch (InterruptedException ex) {
-        	logger.warning("The reader thread was interrupted while attempting to complete requests.");
-        }
-
-        ////Scanner scanner = new Scanner(database,station,scan);
-        //scanner.scan();
-/**
-        ScanManager manager = new ScanManager(scan);
+        ScanManager manager = new ScanManager(reader, injector, stations, scan);
         manager.run();
-**/
 
         try {
             lock.release();
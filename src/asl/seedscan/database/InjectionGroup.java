@@ -0,0 +1,85 @@
+/*
+ * Copyright 2012, United States Geological Survey or
+ * third-party contributors as indicated by the @author tags.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/  >.
+ *
+ */
+package asl.seedscan.database;
+
+/**
+ * Follows a group of MetricResults (e.g., those of a station-day) through
+ * the MetricInjector, which writes them in batches some time after they
+ * were injected (see MetricInjector.inject(MetricResult, InjectionGroup)).
+ *
+ * Once the group has been closed and every one of its results has been 
+ * written to the database, or has failed to be, the listener passed to 
+ * close() is told whether they were all committed. It is called on the 
+ * injector thread, or on the closing thread if the results had already
+ * been written by then.
+ */
+public class InjectionGroup
+{
+    public interface Listener
+    {
+        public void injected(boolean committed);
+    }
+
+    private int pending = 0;
+    private boolean committed = true;
+    private Listener listener = null;
+
+    // called by the injector before a result is queued
+    synchronized void add()
+    {
+        pending++;
+    }
+
+    // called by the injector once a result has been written, or has failed to be
+    void finished(boolean committed)
+    {
+        Listener ready = null;
+        boolean allCommitted;
+        synchronized (this) {
+            pending--;
+            this.committed &= committed;
+            allCommitted = this.committed;
+            if ((pending == 0) && (listener != null)) {
+                ready = listener;
+                listener = null;
+            }
+        }
+        if (ready != null) {
+            ready.injected(allCommitted);
+        }
+    }
+
+    /**
+     * Ends the group: no more results may be added to it.
+     * 
+     * @param listener	Told whether every result of the group was committed.
+     */
+    public void close(Listener listener)
+    {
+        boolean allCommitted;
+        synchronized (this) {
+            if (pending > 0) {
+                this.listener = listener;
+                return;
+            }
+            allCommitted = committed;
+        }
+        listener.injected(allCommitted);
+    }
+}
@@ -23,12 +23,18 @@ import java.nio.ByteBuffer;
 import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.Hashtable;
 import java.util.logging.Logger;
 
 import asl.metadata.Channel;
+import asl.metadata.EpochData;
 import asl.metadata.Station;
 import asl.seedscan.config.*;
 import asl.seedscan.metrics.*;
@@ -43,6 +49,7 @@ public class MetricDatabase
     private String password;
     
     private CallableStatement callStatement;
+    private PreparedStatement insertStatement;
 
     public MetricDatabase(DatabaseT config) {
         this(config.getUri(), config.getUsername(), config.getPassword().getPlain());
@@ -132,6 +139,51 @@ public class MetricDatabase
     	return digest;
     }
     
+    /**
+     * Returns every metric value digest stored for a station-day, keyed by
+     * MetricReader.createDigestKey(), or null if the query failed.
+     */
+    public Hashtable<String, ByteBuffer> getMetricValueDigests(	Calendar date,
+    																Station station)
+    {
+    	Hashtable<String, ByteBuffer> digests = null;
+    	CallableStatement statement = null;
+    	ResultSet resultSet = null;
+    	
+        try {
+	        statement = connection.prepareCall("SELECT * FROM spGetMetricValueDigests(?, ?, ?)");
+	        java.sql.Date sqlDate = new java.sql.Date(date.getTime().getTime());
+	        statement.setDate(1, sqlDate, date);
+	        statement.setString(2, station.getNetwork());
+	        statement.setString(3, station.getStation());
+	        resultSet = statement.executeQuery();
+	        digests = new Hashtable<String, ByteBuffer>();
+	        while (resultSet.next()) {
+	        	byte[] digestIn = resultSet.getBytes(4);
+                if(digestIn != null)
+                    digests.put(MetricReader.createDigestKey(resultSet.getString(1), resultSet.getString(2), 
+                                                             resultSet.getString(3)), ByteBuffer.wrap(digestIn));
+	        }
+        }
+        catch (SQLException e) {
+            logger.severe(String.format("Failed to read the metric value digests of [%s]: %s", station, e.getMessage()));
+            digests = null;
+        }
+        finally {
+            try {
+                if (resultSet != null) {
+                    resultSet.close();
+                }
+                if (statement != null) {
+                    statement.close();
+                }
+            } catch (SQLException e) {
+                logger.warning("Failed to close the metric value digests query: " + e.getMessage());
+            }
+        }
+    	return digests;
+    }
+    
     public Double getMetricValue(	Calendar date,
     								String metricName,
     								Station station,
@@ -160,28 +212,93 @@ public class MetricDatabase
     
     public int insertMetricData(MetricResult results)
     {
-    	int result = -1;
+        ArrayList<MetricResult> failed = new ArrayList<MetricResult>();
+        insertMetricData(Collections.singletonList(results), failed);
+        return failed.isEmpty() ? 0 : -1;
+    }
+    
+    /**
+     * Inserts the values of a batch of MetricResults in a single transaction,
+     * reusing one prepared statement for every row.
+     * 
+     * spInsertMetricData returns a (void) row, which the driver does not allow
+     * inside a JDBC batch, so the rows are executed one after another.
+     * 
+     * If the transaction fails it is rolled back, and each row is inserted
+     * again on its own, so that a single bad row (e.g., a NaN value) does
+     * not lose the rest of the batch.
+     * 
+     * @param failed	Receives each MetricResult of which any value could not be inserted.
+     * @return The number of rows inserted.
+     */
+    public int insertMetricData(List<MetricResult> batch, List<MetricResult> failed)
+    {
+    	int rows = 0;
         try {
-            for (String id: results.getIdSet()) {
-            	Channel channel = MetricResult.createChannel(id);
-	            callStatement = connection.prepareCall("SELECT spInsertMetricData(?, ?, ?, ?, ?, ?, ?, ?)");
-	            java.sql.Date date = new java.sql.Date(results.getDate().getTime().getTime());
-	            callStatement.setDate(1, date, results.getDate());
-	            callStatement.setString(2, results.getMetricName());
-	            callStatement.setString(3, results.getStation().getNetwork());
-	            callStatement.setString(4, results.getStation().getStation());
-	            callStatement.setString(5, channel.getLocation());
-	            callStatement.setString(6, channel.getChannel());
-	            callStatement.setDouble(7, results.getResult(id));
-	            callStatement.setBytes(8, results.getDigest(id).array());
-	            callStatement.executeQuery();
+            connection.setAutoCommit(false);
+            for (MetricResult results: batch) {
+	            for (String id: results.getIdSet()) {
+	                insertMetricValue(results, id);
+	                rows++;
+	            }
             }
-            result = 0;
+            connection.commit();
+            return rows;
         }
         catch (SQLException e) {
-            System.out.print(e);
+            logger.severe(String.format("Failed to insert a batch of %d metric results: %s --> Insert each value on its own", 
+                                        batch.size(), e.getMessage()));
+            try {
+                connection.rollback();
+            } catch (SQLException ex) {
+                logger.severe("Rollback failed: " + ex.getMessage());
+            }
         }
-        return result;
+        finally {
+            try {
+                connection.setAutoCommit(true);
+            } catch (SQLException e) {
+                logger.severe("Failed to restore autocommit: " + e.getMessage());
+            }
+        }
+
+        rows = 0;
+        for (MetricResult results: batch) {
+            boolean inserted = true;
+            for (String id: results.getIdSet()) {
+                try {
+                    insertMetricValue(results, id);
+                    rows++;
+                }
+                catch (SQLException e) {
+                    logger.severe(String.format("Failed to insert %s [%s] [%s] %s: %s", results.getMetricName(), 
+                                                results.getStation(), EpochData.epochToDateString(results.getDate()), id, e.getMessage()));
+                    inserted = false;
+                }
+            }
+            if (!inserted) {
+                failed.add(results);
+            }
+        }
+        return rows;
+    }
+    
+    private void insertMetricValue(MetricResult results, String id)
+    throws SQLException
+    {
+        if (insertStatement == null) {
+            insertStatement = connection.prepareStatement("SELECT spInsertMetricData(?, ?, ?, ?, ?, ?, ?, ?)");
+        }
+        Channel channel = MetricResult.createChannel(id);
+        insertStatement.setDate(1, new java.sql.Date(results.getDate().getTime().getTime()), results.getDate());
+        insertStatement.setString(2, results.getMetricName());
+        insertStatement.setString(3, results.getStation().getNetwork());
+        insertStatement.setString(4, results.getStation().getStation());
+        insertStatement.setString(5, channel.getLocation());
+        insertStatement.setString(6, channel.getChannel());
+        insertStatement.setDouble(7, results.getResult(id));
+        insertStatement.setBytes(8, results.getDigest(id).array());
+        insertStatement.executeQuery().close();
     }
     
     public String selectAll(String startDate, String endDate){
@@ -3,6 +3,8 @@
  */
 package asl.seedscan.database;
 
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import asl.concurrent.Task;
@@ -10,30 +12,94 @@ import asl.concurrent.TaskThread;
 import asl.seedscan.metrics.MetricResult;
 
 /**
- * @author Joel D. Edwards <jdedwards@usgs.gov>
+ * Queued results are written in batches: a batch is flushed in one
+ * transaction once it holds batchSize rows (500), once its oldest result
+ * has waited flushInterval milliseconds (5 seconds), or when the thread
+ * is halted. The queue is bounded (DEFAULT_CAPACITY, 64 injections) so
+ * that inject() blocks while the database is behind, rather than letting
+ * results pile up in memory.
  *
+ * @author Joel D. Edwards <jdedwards@usgs.gov>
  */
 public class MetricInjector
-extends TaskThread<MetricResult>
+extends TaskThread<MetricInjector.Injection>
 {
     private static final Logger logger = Logger.getLogger("asl.seedscan.database.MetricInjector");
     
+    public static final int DEFAULT_CAPACITY = 64;
+    
 	MetricDatabase metricDB;
+
+	private int batchSize = 500;
+	private long flushInterval = 5000;
+
+	private ArrayList<MetricResult> batch = new ArrayList<MetricResult>();
+	private ArrayList<InjectionGroup> batchGroups = new ArrayList<InjectionGroup>();
+	private int batchRows = 0;
+	private long batchStart = 0;
+
+	// statistics
+	private volatile long batchCount = 0;
+	private volatile long rowCount = 0;
+	private volatile long failureCount = 0;
+	private volatile long insertNanos = 0;
 	
 	/**
 	 * 
 	 */
 	public MetricInjector(MetricDatabase metricDB) {
-		super();
-		this.metricDB = metricDB;
+		this(metricDB, DEFAULT_CAPACITY);
 	}
 
 	/**
-	 * @param capacity
+	 * @param capacity	The number of MetricResults which may be queued before inject() blocks.
 	 */
 	public MetricInjector(MetricDatabase metricDB, int capacity) {
 		super(capacity);
 		this.metricDB = metricDB;
+		setTimeout(flushInterval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @param batchSize	The number of rows (metric values) written per transaction.
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * @param flushInterval	The longest time (in milliseconds) a result waits before it is written.
+	 */
+	public void setFlushInterval(long flushInterval) {
+		this.flushInterval = flushInterval;
+		setTimeout(flushInterval, TimeUnit.MILLISECONDS);
+	}
+
+	public long getFlushInterval() {
+		return flushInterval;
+	}
+
+	public long getBatchCount() {
+		return batchCount;
+	}
+
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	public long getFailureCount() {
+		return failureCount;
+	}
+
+	/**
+	 * @return The rows written per second of time spent in the database.
+	 */
+	public double getRowsPerSecond() {
+		return (insertNanos > 0) ? rowCount / (insertNanos / 1e9) : 0.0;
 	}
 
     public Boolean isConnected() {
@@ -54,28 +120,114 @@ extends TaskThread<MetricResult>
 	 * @see asl.concurrent.TaskThread#performTask(asl.concurrent.Task)
 	 */
 	@Override
-	protected void performTask(Task<MetricResult> task) {
+	protected void performTask(Task<Injection> task) {
 		String command = task.getCommand();
-		MetricResult results = task.getData();
+		MetricResult results = task.getData().results;
 		
 		logger.info("performTask: command=" + command + " results=" + results);
 		
 		if (command.equals("INJECT")) {
-			metricDB.insertMetricData(results);
+			if (batch.isEmpty()) {
+				batchStart = System.currentTimeMillis();
+			}
+			batch.add(results);
+			batchGroups.add(task.getData().group);
+			batchRows += results.getIdSet().size();
+			if ((batchRows >= batchSize) || (System.currentTimeMillis() - batchStart >= flushInterval)) {
+				flush();
+			}
 		}
 	}
 
+	/* (non-Javadoc)
+	 * @see asl.concurrent.TaskThread#idle()
+	 */
+	@Override
+	protected void idle() {
+		// Nothing has arrived for flushInterval, so write what we have
+		flush();
+	}
+
+	private void flush() {
+		if (batch.isEmpty()) {
+			return;
+		}
+		long start = System.nanoTime();
+		ArrayList<MetricResult> failed = new ArrayList<MetricResult>();
+		int rows = metricDB.insertMetricData(batch, failed);
+		insertNanos += System.nanoTime() - start;
+		batchCount++;
+		rowCount += rows;
+		if (failed.size() > 0) {
+			failureCount += failed.size();
+			logger.severe(String.format("Failed to inject %d of %d results (%d of %d values written)", 
+			                            failed.size(), batch.size(), rows, batchRows));
+		}
+		else {
+			logger.fine(String.format("Injected %d results (%d values) in batch %d", batch.size(), rows, batchCount));
+		}
+		for (int i = 0; i < batch.size(); i++) {
+			InjectionGroup group = batchGroups.get(i);
+			if (group != null) {
+				group.finished(!failed.contains(batch.get(i)));
+			}
+		}
+		batch.clear();
+		batchGroups.clear();
+		batchRows = 0;
+	}
+
 	/* (non-Javadoc)
 	 * @see asl.concurrent.TaskThread#cleanup()
 	 */
 	@Override
 	protected void cleanup() {
-		// Post-run logic goes here
+		flush();
+		logger.info(String.format("Injected %d values in %d batches (%d results failed), %.1f values/sec",
+		                          rowCount, batchCount, failureCount, getRowsPerSecond()));
 	}
 
 	public void inject(MetricResult results)
 	throws InterruptedException
 	{
-		addTask("INJECT", results);
+		inject(results, null);
+	}
+
+	/**
+	 * Queues results to be written, and adds them to a group whose listener
+	 * is told once they have been committed (see InjectionGroup).
+	 */
+	public void inject(MetricResult results, InjectionGroup group)
+	throws InterruptedException
+	{
+		if (group != null) {
+			group.add();
+		}
+		try {
+			addTask("INJECT", new Injection(results, group));
+		} catch (InterruptedException ex) {
+			if (group != null) {
+				group.finished(false);
+			}
+			throw ex;
+		}
+	}
+
+	/**
+	 * A queued MetricResult and the group (if any) it belongs to.
+	 */
+	static class Injection
+	{
+		private MetricResult results;
+		private InjectionGroup group;
+
+		Injection(MetricResult results, InjectionGroup group) {
+			this.results = results;
+			this.group = group;
+		}
+
+		public String toString() {
+			return String.valueOf(results);
+		}
 	}
 }
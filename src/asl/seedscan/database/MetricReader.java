@@ -4,6 +4,7 @@
 package asl.seedscan.database;
 
 import java.nio.ByteBuffer;
+import java.util.Hashtable;
 import java.util.logging.Logger;
 
 import asl.concurrent.Task;
@@ -21,6 +22,18 @@ extends TaskThread<QueryContext<? extends Object>>
     
 	MetricDatabase metricDB;
 
+	/**
+	 * The context of a GET-METRIC-VALUE-DIGESTS query. Being a concrete type,
+	 * it can be cast back from the task's QueryContext without an unchecked cast.
+	 */
+	static class DigestTableContext
+	extends MetricContext<Hashtable<String, ByteBuffer>>
+	{
+		DigestTableContext(MetricValueIdentifier id) {
+			super(id);
+		}
+	}
+
 	/**
 	 * 
 	 */
@@ -74,6 +87,13 @@ extends TaskThread<QueryContext<? extends Object>>
 				QueryResult<ByteBuffer> result = new QueryResult<ByteBuffer>(digest);
 				context.getReplyQueue().put(result);
 			}
+			else if (command.equals("GET-METRIC-VALUE-DIGESTS")) {
+				DigestTableContext context = (DigestTableContext)task.getData(); 
+				MetricValueIdentifier id = context.getId();
+				Hashtable<String, ByteBuffer> digests = metricDB.getMetricValueDigests(id.getDate(), id.getStation());
+				QueryResult<Hashtable<String, ByteBuffer>> result = new QueryResult<Hashtable<String, ByteBuffer>>(digests);
+				context.getReplyQueue().put(result);
+			}
 			else if (command.equals("GET-METRIC-VALUE")) {
 				MetricContext<Double> context = (MetricContext<Double>)task.getData(); 
 				MetricValueIdentifier id = context.getId();
@@ -132,4 +152,33 @@ extends TaskThread<QueryContext<? extends Object>>
 		}
 		return digest;
 	}
+	
+	/**
+	 * Loads every metric value digest stored for the station-day of id (its
+	 * metric name and channel are ignored) in a single query.
+	 * 
+	 * @return The digests keyed by createDigestKey(), or null if they could not be read.
+	 */
+	public Hashtable<String, ByteBuffer> getMetricValueDigests(MetricValueIdentifier id)
+	{
+		Hashtable<String, ByteBuffer> digests = null;
+		try {
+			DigestTableContext context = new DigestTableContext(id);
+			addTask("GET-METRIC-VALUE-DIGESTS", context);
+			digests = context.getReplyQueue().take().getResult();
+		} catch (InterruptedException ex) {
+			logger.warning("Interrupted while awaiting reply from database reader thread.");
+		}
+		return digests;
+	}
+	
+	public static String createDigestKey(MetricValueIdentifier id)
+	{
+		return createDigestKey(id.getMetricName(), id.getChannel().getLocation(), id.getChannel().getChannel());
+	}
+	
+	public static String createDigestKey(String metricName, String location, String channel)
+	{
+		return String.format("%s:%s,%s", metricName, location, channel);
+	}
 }
@@ -52,12 +52,15 @@ public class EventLoader
 
     public EventLoader( String directoryPath ) {
         // Should only try to load the eventsDir ONCE, across all calls from Scanner
-        if (!eventsDirectoryLoaded) {
-            eventsDirectoryValid  = loadEventsDirectory( directoryPath );
-            eventsDirectoryLoaded = true;
-        }
-        else {
-            logger.info(String.format( "eventsDir already initialized to:%s [valid=%s]", eventsDirectory, eventsDirectoryValid) );
+        // Scanners run concurrently (see ScanManager) so the static state is guarded by the class lock
+        synchronized (EventLoader.class) {
+            if (!eventsDirectoryLoaded) {
+                eventsDirectoryValid  = loadEventsDirectory( directoryPath );
+                eventsDirectoryLoaded = true;
+            }
+            else {
+                logger.info(String.format( "eventsDir already initialized to:%s [valid=%s]", eventsDirectory, eventsDirectoryValid) );
+            }
         }
     }
 
@@ -95,11 +98,14 @@ public class EventLoader
 
         final String key = makeKey(timestamp);
 
-        if (cmtTree == null) return null;       // No events loaded
+        Hashtable<String, EventCMT> dayCMTs = null;
+        synchronized (EventLoader.class) {
+            if (cmtTree == null) return null;       // No events loaded
 
-        if (!cmtTree.containsKey(key)) return null;// No events loaded for this day
+            if (!cmtTree.containsKey(key)) return null;// No events loaded for this day
 
-        Hashtable<String, EventCMT> dayCMTs = cmtTree.get(key);
+            dayCMTs = cmtTree.get(key);
+        }
         if (dayCMTs == null) return null; // Not sure why this would happen
 
         FilenameFilter sacFilter = new FilenameFilter() {
@@ -164,29 +170,31 @@ System.out.format("== WARNING: EventLoader.getDaySynthetics: eventDir=[%s] does
 
         //System.out.format("== EventLoader.getDayEvents: Request events for key=[%s]\n", key);
 
-        if (!eventsDirectoryValid) {
-            //System.out.format("== EventLoader.getDayEvents: eventsDirectory is NOT valid --> return null\n");
-            return null;
-        }
+        synchronized (EventLoader.class) {
+            if (!eventsDirectoryValid) {
+                //System.out.format("== EventLoader.getDayEvents: eventsDirectory is NOT valid --> return null\n");
+                return null;
+            }
 
-        if (cmtTree != null) {
-            if (cmtTree.containsKey(key)) {
-                //System.out.format("== EventLoader.getDayEvents: key=[%s] FOUND --> Return the events\n", key);
-                return cmtTree.get(key);
+            if (cmtTree != null) {
+                if (cmtTree.containsKey(key)) {
+                    //System.out.format("== EventLoader.getDayEvents: key=[%s] FOUND --> Return the events\n", key);
+                    return cmtTree.get(key);
+                }
+            }
+            else {
+                cmtTree = new Hashtable<String, Hashtable<String, EventCMT>>();
             }
-        }
-        else {
-            cmtTree = new Hashtable<String, Hashtable<String, EventCMT>>();
-        }
 
-        //System.out.format("== EventLoader.getDayEvents: key=[%s] NOT FOUND --> Try to load it\n", key);
-        Hashtable<String, EventCMT> dayCMTs = loadDayCMTs(key);
+            //System.out.format("== EventLoader.getDayEvents: key=[%s] NOT FOUND --> Try to load it\n", key);
+            Hashtable<String, EventCMT> dayCMTs = loadDayCMTs(key);
 
-        if (dayCMTs != null) {
-            cmtTree.put( key, dayCMTs);
-        }
+            if (dayCMTs != null) {
+                cmtTree.put( key, dayCMTs);
+            }
 
-        return dayCMTs;
+            return dayCMTs;
+        }
     }
 
 
@@ -53,6 +53,22 @@ extends PowerBandMetric
         return "CoherencePBM";
     }
 
+    @Override public String[] getChannelBands()
+    {
+        return new String[] {"LH"};
+    }
+
+    @Override public String[] getLocationCodes()
+    {
+        return new String[] {"00", "10"};
+    }
+
+ // The horizontal coherences are computed on the rotated channels (00-LHND, 10-LHED, etc.)
+    @Override public boolean derivesChannels()
+    {
+        return true;
+    }
+
     private final String outputDir = "outputs";
 
     public void process()
@@ -43,6 +43,11 @@ extends Metric
         return "GapCountMetric";
     }
 
+    @Override public boolean isHeaderOnly()
+    {
+        return true;
+    }
+
 
     public void process()
     {
@@ -46,6 +46,11 @@ extends Metric
         return "MassPositionMetric";
     }
 
+    @Override public String[] getChannelBands()
+    {
+        return new String[] {"VM"};
+    }
+
     public void process()
     {
         System.out.format("\n              [ == Metric %s == ]\n", getName() ); 
@@ -30,8 +30,10 @@ import timeutils.Timeseries;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
 import java.util.logging.Logger;
 
+import asl.concurrent.ComputeOnceTable;
 import asl.seedsplitter.BlockLocator;
 import asl.seedsplitter.ContiguousBlock;
 import asl.seedsplitter.DataSet;
@@ -45,7 +47,7 @@ public abstract class Metric
     private static final Logger logger = Logger.getLogger("asl.seedscan.metrics.Metric");
 
     private Hashtable<String, String> arguments;
-    private Hashtable<CrossPowerKey, CrossPower> crossPowerMap;
+    private ComputeOnceTable<CrossPowerKey, CrossPower> crossPowerMap;
 
     private Boolean forceUpdate = false;
     private Boolean makePlots   = false;
@@ -63,7 +65,7 @@ public abstract class Metric
     public Metric()
     {
         arguments = new Hashtable<String, String>();
-        crossPowerMap = new Hashtable<CrossPowerKey, CrossPower>();
+        crossPowerMap = new ComputeOnceTable<CrossPowerKey, CrossPower>();
 
         // MTH: 03-18-13: Added to allow these optional arguments to each cfg:metric in config.xml
         addArgument("makeplots");
@@ -81,38 +83,39 @@ public abstract class Metric
     	return createIdentifier(MetricResult.createChannel(MetricResult.createResultId(channelA, channelB)));
     }
 
-    public Hashtable<CrossPowerKey, CrossPower> getCrossPowerMap()
+/**
+ *  The cross powers computed so far for the station-day. Scanner shares one map between all
+ *  of the day's metrics, which may run concurrently: each cross power is computed once, by
+ *  the first metric to ask for it, and any other metric asking for it meanwhile waits for it.
+ */
+    public ComputeOnceTable<CrossPowerKey, CrossPower> getCrossPowerMap()
     {
         return crossPowerMap;
     }
 
-    public void setCrossPowerMap(Hashtable<CrossPowerKey, CrossPower> crossPowerMap)
+    public void setCrossPowerMap(ComputeOnceTable<CrossPowerKey, CrossPower> crossPowerMap)
     {
         this.crossPowerMap = crossPowerMap;
     }
 
-    protected CrossPower getCrossPower(Channel channelA, Channel channelB)
+    protected CrossPower getCrossPower(final Channel channelA, final Channel channelB)
     {
         CrossPowerKey key = new CrossPowerKey(channelA, channelB);
-        CrossPower crossPower;
 
-        if (crossPowerMap.containsKey(key)) {
-            crossPower = crossPowerMap.get(key);
-        }
-        else {
-            double[] psd = null;
-            double[] df  = new double[1];            // Dummy array to get params out of computePSD()
-            for (int i=0; i<df.length; i++) df[i]=0;
-            try {
-                psd = computePSD(channelA, channelB, df);
-            }
-            catch (NullPointerException e) {
-                System.out.println("== Metric.getCrossPower NullPointerException = " + e);
+        return crossPowerMap.get(key, new Callable<CrossPower>() {
+            public CrossPower call() {
+                double[] psd = null;
+                double[] df  = new double[1];            // Dummy array to get params out of computePSD()
+                for (int i=0; i<df.length; i++) df[i]=0;
+                try {
+                    psd = computePSD(channelA, channelB, df);
+                }
+                catch (NullPointerException e) {
+                    System.out.println("== Metric.getCrossPower NullPointerException = " + e);
+                }
+                return new CrossPower(psd, df[0]);
             }
-            crossPower = new CrossPower(psd, df[0]);
-            crossPowerMap.put(key, crossPower);
-        }
-        return crossPower;
+        });
     }
 
     //public Hashtable<String, Hashtable<String, SacTimeSeries>> getEventSynthetics()
@@ -164,6 +167,45 @@ public abstract class Metric
     public abstract String getName();
     public abstract void process();
 
+/**
+ *  The channel bands (band + instrument code, e.g., "LH") whose data this metric reads.
+ *  Scanner only decodes the bands needed by at least one of the configured metrics.
+ *  The default (null) means the metric may read any channel.
+ */
+    public String[] getChannelBands()
+    {
+        return null;
+    }
+
+/**
+ *  The location codes whose data this metric reads, or null (the default) for any location.
+ */
+    public String[] getLocationCodes()
+    {
+        return null;
+    }
+
+/**
+ *  Return true if this metric only uses the record headers (start times, sample counts + rates,
+ *  timing quality and calibration blockettes) and never the sample values. When every configured
+ *  metric is header-only, Scanner reads the data without decompressing it.
+ */
+    public boolean isHeaderOnly()
+    {
+        return false;
+    }
+
+/**
+ *  Return true if this metric may add derived channels (e.g., rotated "00-LHND" + "00-LHED") to the
+ *  day's data + metadata, which changes the channel lists seen by the metrics after it. When the
+ *  metrics of a day run concurrently, such a metric runs on its own: after every metric configured
+ *  before it has finished, and before any metric configured after it starts.
+ */
+    public boolean derivesChannels()
+    {
+        return false;
+    }
+
 /**
  * MTH
  */
@@ -259,10 +301,9 @@ public abstract class Metric
 //      double[]   chanXData = channelOverlap[0];
 //      double[]   chanYData = channelOverlap[1];
 
-// Instead, getPaddedDayData() gives us a complete (zero padded if necessary) array of data for 1 day:
-        double[] chanXData = metricData.getPaddedDayData(channelX);
-        double[] chanYData = metricData.getPaddedDayData(channelY);
-
+// Instead, the windows span a complete (zero padded if necessary) day, and are filled one at a time
+//   from the DataSets (see SegmentIterator, which describes how they are laid out on the day).
+//   The segment spectra computed from them are shared by every PSD that uses the channel (see below).
         double srateX = metricData.getChannelData(channelX).get(0).getSampleRate();
         double srateY = metricData.getChannelData(channelY).get(0).getSampleRate();
         ChannelMeta chanMetaX = stationMeta.getChanMeta(channelX);
@@ -273,7 +314,7 @@ public abstract class Metric
             throw new RuntimeException(message);
         }
         srate = srateX;
-        ndata = chanXData.length; 
+        ndata = metricData.getDayLength(channelX); 
 
         //ndata = (ndataX < ndataY) ? ndataX : ndataY;
 
@@ -306,13 +347,14 @@ public abstract class Metric
 
         params[0] = df;
 
-        double[] xseg = new double[nseg_pnts];
-        double[] yseg = new double[nseg_pnts];
-
-        Cmplx[]  xfft = null;
-        Cmplx[]  yfft = null;
+     // The detrended, tapered + transformed windows of each channel are computed once per day
+     //   (by MetricData), so that each auto or cross spectrum only has to multiply them together.
+     // The spectra are kept as (real, imag) double arrays to avoid a Cmplx object per frequency per window
+        SegmentSpectra xspec = metricData.getSegmentSpectra(channelX, nseg_pnts, noff, nfft);
+        SegmentSpectra yspec = metricData.getSegmentSpectra(channelY, nseg_pnts, noff, nfft);
         double[] psd  = new double[nf];
-        Cmplx[]  psdC = new Cmplx[nf];
+        double[] psdCRe = new double[nf];
+        double[] psdCIm = new double[nf];
         double   wss  = 0.;
 
         int iwin=0;
@@ -320,38 +362,29 @@ public abstract class Metric
         int ilst=nseg_pnts-1;
         int offset = 0;
 
-// Initialize the Cmplx array
-       for(int k = 0; k < nf; k++){
-            psdC[k] = new Cmplx(0., 0.);
-        }
-
         while (ilst < ndata) // ndata needs to come from largest dataset
         {
-           for(int k=0; k<nseg_pnts; k++) {     // Load current window
-            xseg[k] = chanXData[k+offset]; 
-            yseg[k] = chanYData[k+offset]; 
-            //xseg[k]=(double)intArrayX[k+offset]; 
-            //yseg[k]=(double)intArrayY[k+offset]; 
+           if (iwin >= yspec.getWindowCount()) {
+               break;
            }
-           //Timeseries.timeout(xseg,"xseg");
-           Timeseries.detrend(xseg);
-           Timeseries.detrend(yseg);
-           Timeseries.debias(xseg);
-           Timeseries.debias(yseg);
-
-           wss = Timeseries.costaper(xseg,.10);
-           wss = Timeseries.costaper(yseg,.10);
+        // The windows are detrended, debiased and tapered (10% cosine) before the FFT, which
+        //   returns just the (nf = nfft/2 + 1) positive frequencies
+           double[] xfftRe = xspec.getReal(iwin);
+           double[] xfftIm = xspec.getImag(iwin);
+           double[] yfftRe = yspec.getReal(iwin);
+           double[] yfftIm = yspec.getImag(iwin);
+           wss = xspec.getTaperWeight();
 // MTH: Maybe want to assert here that wss > 0 to avoid divide-by-zero below ??
 
-        // fft2 returns just the (nf = nfft/2 + 1) positive frequencies
-           xfft = Cmplx.fft2(xseg);
-           yfft = Cmplx.fft2(yseg);
-
         // Load up the 1-sided PSD:
            for(int k = 0; k < nf; k++){
-            // when X=Y, X*Y.conjg is Real and (X*Y.conjg).mag() simply returns the Real part as a double 
-                psd[k] = psd[k] + Cmplx.mul(xfft[k], yfft[k].conjg()).mag() ;
-                psdC[k]= Cmplx.add(psdC[k], Cmplx.mul(xfft[k], yfft[k].conjg()) );
+            // X*Y.conjg:
+                double re = xfftRe[k]*yfftRe[k] + xfftIm[k]*yfftIm[k];
+                double im = xfftIm[k]*yfftRe[k] - xfftRe[k]*yfftIm[k];
+            // when X=Y, X*Y.conjg is Real and its magnitude is simply the Real part
+                psd[k] = psd[k] + Math.sqrt(re*re + im*im);
+                psdCRe[k] += re;
+                psdCIm[k] += im;
            }
 
            iwin ++;
@@ -374,7 +407,8 @@ public abstract class Metric
 
         for(int k = 0; k < nf; k++){
             psd[k]  = psd[k]*psdNormalization;
-            psdC[k]  = Cmplx.mul(psdC[k], psdNormalization);
+            psdCRe[k] = psdCRe[k]*psdNormalization;
+            psdCIm[k] = psdCIm[k]*psdNormalization;
             freq[k] = (double)k * df;
         }
 
@@ -383,20 +417,35 @@ public abstract class Metric
         Cmplx[]  instrumentResponseY = chanMetaY.getResponse(freq, 3);
 
         double[] responseMag        = new double[nf];
-        Cmplx[] responseMagC        = new Cmplx[nf];
 
      // We're computing the squared magnitude as we did with the FFT above
      //   Start from k=1 to skip DC (k=0) where the response=0
         psd[0]=0; 
         for(int k = 1; k < nf; k++){
 
-            responseMag[k]  = Cmplx.mul(instrumentResponseX[k], instrumentResponseY[k].conjg()).mag() ;
-            responseMagC[k] = Cmplx.mul(instrumentResponseX[k], instrumentResponseY[k].conjg()) ;
+            Cmplx respX = instrumentResponseX[k];
+            Cmplx respY = instrumentResponseY[k];
+            double respRe = respX.r*respY.r + respX.i*respY.i;   // X*Y.conjg
+            double respIm = respX.i*respY.r - respX.r*respY.i;
+            responseMag[k]  = Math.sqrt(respRe*respRe + respIm*respIm);
             if (responseMag[k] == 0) {
                 throw new RuntimeException("NLNMDeviation Error: responseMag[k]=0 --> divide by zero!");
             }
             else {   // Divide out (squared)instrument response & Convert to dB:
-                psdC[k] = Cmplx.div(psdC[k], responseMagC[k]);
+                double re = psdCRe[k];
+                double im = psdCIm[k];
+                if (Math.abs(respRe) >= Math.abs(respIm)) {   // as in Cmplx.div()
+                    double r   = respIm/respRe;
+                    double den = respRe + r*respIm;
+                    psdCRe[k]  = (re + r*im)/den;
+                    psdCIm[k]  = (im - r*re)/den;
+                }
+                else {
+                    double r   = respRe/respIm;
+                    double den = respIm + r*respRe;
+                    psdCRe[k]  = (re*r + im)/den;
+                    psdCIm[k]  = (im*r - re)/den;
+                }
                 psd[k] = psd[k]/responseMag[k];
             }
         }
@@ -406,13 +455,15 @@ public abstract class Metric
         int nhalf   = 5;
         int nw = nf - nsmooth;
         double[] psdFsmooth = new double[nf];
-        Cmplx[] psdCFsmooth = new Cmplx[nf];
+        double[] psdCFsmoothRe = new double[nf];
+        double[] psdCFsmoothIm = new double[nf];
 
         int iw=0;
 
         for (iw = 0; iw < nhalf; iw++) {
             psdFsmooth[iw] = psd[iw];
-            psdCFsmooth[iw]= psdC[iw];
+            psdCFsmoothRe[iw] = psdCRe[iw];
+            psdCFsmoothIm[iw] = psdCIm[iw];
         }
 
         // iw is really icenter of nsmooth point window
@@ -421,26 +472,29 @@ public abstract class Metric
             int k2 = iw + nhalf;
 
             double sum = 0;
-            Cmplx sumC = new Cmplx(0., 0.);
+            double sumCRe = 0;
+            double sumCIm = 0;
             for (int k = k1; k < k2; k++) {
                 sum  = sum + psd[k];
-                sumC = Cmplx.add(sumC, psdC[k]);
+                sumCRe += psdCRe[k];
+                sumCIm += psdCIm[k];
             }
             psdFsmooth[iw] = sum / (double)nsmooth;
-            psdCFsmooth[iw]= Cmplx.div(sumC, (double)nsmooth);
+            psdCFsmoothRe[iw] = sumCRe / (double)nsmooth;
+            psdCFsmoothIm[iw] = sumCIm / (double)nsmooth;
         }
 
      // Copy the remaining point into the smoothed array
         for (; iw < nf; iw++) {
             psdFsmooth[iw] = psd[iw];
-            psdCFsmooth[iw]= psdC[iw];
+            psdCFsmoothRe[iw] = psdCRe[iw];
+            psdCFsmoothIm[iw] = psdCIm[iw];
         }
 
      // Copy Frequency smoothed spectrum back into psd[f] and proceed as before
         for ( int k = 0; k < nf; k++){
             //psd[k]  = psdFsmooth[k];
-            psd[k]  = psdCFsmooth[k].mag();
-            //psd[k]  = psdC[k].mag();
+            psd[k]  = Math.sqrt(psdCFsmoothRe[k]*psdCFsmoothRe[k] + psdCFsmoothIm[k]*psdCFsmoothIm[k]);
         }
         psd[0]=0; // Reset DC
 
@@ -26,10 +26,12 @@ import asl.metadata.EpochData;
 import asl.metadata.Station;
 import asl.metadata.meta_new.StationMeta;
 import asl.metadata.meta_new.ChannelMeta;
+import asl.concurrent.ComputeOnceTable;
 import asl.security.MemberDigest;
 import asl.seedsplitter.BlockLocator;
 import asl.seedsplitter.ContiguousBlock;
 import asl.seedsplitter.DataSet;
+import asl.seedsplitter.RecordIndex;
 import asl.seedsplitter.SeedSplitter;
 import asl.seedsplitter.IllegalSampleRateException;
 import asl.seedsplitter.Sequence;
@@ -38,6 +40,7 @@ import asl.util.Hex;
 
 import timeutils.Timeseries;
 import freq.Cmplx;
+import freq.FFT;
 
 import seed.Blockette320;
 
@@ -47,6 +50,7 @@ import java.util.Hashtable;
 import java.util.Set;
 import java.util.logging.Logger;
 import java.util.Calendar;
+import java.util.concurrent.Callable;
 
 public class MetricData
 {
@@ -58,6 +62,24 @@ public class MetricData
     private StationMeta metadata;
     private Hashtable<String, String> synthetics;
     private MetricReader metricReader;
+ // Channels decoded only once they are requested (see RecordIndex), null --> every channel is in data
+    private RecordIndex recordIndex = null;
+ // The end of a spill-over (see getSpillOver) whose channels are decoded from recordIndex + the heads copied so far
+    private long spillOverEnd = Long.MAX_VALUE;
+    private Hashtable<String, ArrayList<DataSet>> spillOverHeads = new Hashtable<String, ArrayList<DataSet>>();
+ // Digests already stored in the database for this station-day (see loadValueDigests)
+    private Hashtable<String, ByteBuffer> storedDigests = null;
+
+ // Windowed segment spectra of each channel, shared by all of the day's auto + cross spectra
+    private ComputeOnceTable<String, SegmentSpectra> segmentSpectra = new ComputeOnceTable<String, SegmentSpectra>();
+    private long segmentSpectraBytes = 0;
+ // A 1 Hz channel-day's spectra take ~3.4 MB, a 40 Hz one's ~110 MB (~8x its decoded samples),
+ //   so by default only low rate channels are kept (see cfg:spectra_cache_mb)
+    private long maxSegmentSpectraBytes = 16L * 1024 * 1024;
+
+ // The last hash of each channel array (see getHash()) + the channel digests it was made from
+    private Hashtable<String, ByteBuffer> channelArrayHashes = new Hashtable<String, ByteBuffer>();
+    private Hashtable<String, ArrayList<ByteBuffer>> channelArrayDigests = new Hashtable<String, ArrayList<ByteBuffer>>();
 
     private MetricData nextMetricData;
 
@@ -110,6 +132,19 @@ public class MetricData
     }
 
 
+    // The channels are decoded from the record index as they are requested (see SeedSplitter.setIndexOnly)
+    public MetricData(	MetricReader metricReader, RecordIndex recordIndex, 
+                        Hashtable<String,ArrayList<Integer>> qualityData, StationMeta metadata,
+                        Hashtable<String,ArrayList<Blockette320>> randomCal)
+    {
+    	this.metricReader = metricReader;
+        this.data         = new Hashtable<String,ArrayList<DataSet>>();
+        this.recordIndex  = recordIndex;
+        this.qualityData  = qualityData;
+        this.randomCal    = randomCal;
+        this.metadata     = metadata;
+    }
+
     public MetricData(	MetricReader metricReader, Hashtable<String,ArrayList<DataSet>> data, 
                         Hashtable<String,ArrayList<Integer>> qualityData, StationMeta metadata)
     {
@@ -155,15 +190,37 @@ public class MetricData
     {
         if (data == null) { return false; }
 
-        Boolean hasChannel = false;
-        String locationName = location + "-" + name;
-        Set<String> keys = data.keySet();
-        for (String key : keys){          // key looks like "IU_ANMO 00-BHZ (20.0 Hz)"
+        return (findChannelKey(location + "-" + name) != null);
+    }
+
+/**
+ *  getChannelKeys - Return the key of every channel, those in data followed by those still
+ *                   to be decoded from the record index
+ */
+    private ArrayList<String> getChannelKeys()
+    {
+        ArrayList<String> keys = new ArrayList<String>(data.keySet());
+        if (recordIndex != null) {
+            for (String key : recordIndex.getKeys()) {
+                if (!data.containsKey(key)) {
+                    keys.add(key);
+                }
+            }
+        }
+        return keys;
+    }
+
+/**
+ *  findChannelKey - Return the first key containing locationName (e.g., "00-BHZ"), or null
+ */
+    private String findChannelKey(String locationName)
+    {
+        for (String key : getChannelKeys()){ // key looks like "IU_ANMO 00-BHZ (20.0 Hz)"
             if (key.contains(locationName) ){
-                hasChannel = true;
+                return key;
             }
         }
-        return hasChannel;           
+        return null;
     }
 
 /**
@@ -173,15 +230,37 @@ public class MetricData
  */
     public ArrayList<DataSet> getChannelData(String location, String name)
     {
-        String locationName = location + "-" + name;
-        Set<String> keys = data.keySet();
-        for (String key : keys){          // key looks like "IU_ANMO 00-BHZ (20.0 Hz)"
-           if (key.contains(locationName) ){
-            //System.out.format(" key=%s contains locationName=%s\n", key, locationName);
-              return data.get(key);       // return ArrayList<DataSet>
-           }
+        String key = findChannelKey(location + "-" + name);
+        if (key == null) {
+            return null;
+        }
+        ArrayList<DataSet> datasets = data.get(key);
+        if (datasets == null) {           // Not decoded yet (or released since) --> decode it now
+            datasets = getIndexedChannelData(key);
+        }
+        return datasets;                  // return ArrayList<DataSet>
+    }
+
+/**
+ *  getIndexedChannelData - Return a channel's DataSets from the record index, which keeps them
+ *                          until memory runs short. A spill-over keeps the head of each channel
+ *                          it has decoded.
+ */
+    private ArrayList<DataSet> getIndexedChannelData(String key)
+    {
+        if (spillOverEnd == Long.MAX_VALUE) {
+            return recordIndex.getChannelData(key);
+        }
+        synchronized (spillOverHeads) {
+            ArrayList<DataSet> head = spillOverHeads.get(key);
+            if (head == null) {
+                head = copyHead(recordIndex.getChannelData(key), spillOverEnd);
+                if (head != null) {
+                    spillOverHeads.put(key, head);
+                }
+            }
+            return head;
         }
-        return null;           
     }
 
     public ArrayList<DataSet> getChannelData(Channel channel)
@@ -286,8 +365,6 @@ public class MetricData
         double dt = 1./srate;
         double df = 1./(nfft*dt);
 
-        Cmplx[]  xfft = new Cmplx[nf];
-
         double[] data = new double[timeseries.length];
         for (int i=0; i<timeseries.length; i++){
             data[i] = timeseries[i];
@@ -296,8 +373,11 @@ public class MetricData
         Timeseries.debias(data);
         double wss = Timeseries.costaper(data,.01);
 
-        // fft2 returns just the (nf = nfft/2 + 1) positive frequencies
-        xfft = Cmplx.fft2(data);
+        // realForward returns just the (nf = nfft/2 + 1) positive frequencies
+        FFT fft = FFT.getInstance(nfft);
+        double[] xfftRe = new double[nf];
+        double[] xfftIm = new double[nf];
+        fft.realForward(data, data.length, xfftRe, xfftIm);
         double f1 = .001;
         double f2 = .002;
         double f3 = .02;
@@ -307,23 +387,13 @@ public class MetricData
 
         for(int k = 0; k < nf; k++){
             double taper = bpass(k,k1,k2,k3,k4);
-            xfft[k] = Cmplx.mul(xfft[k],taper);
-        }
-
-        Cmplx[] cfft = new Cmplx[nfft];
-        cfft[0]    = xfft[0];     // DC
-        cfft[nf-1] = xfft[nf-1];  // Nyq
-        for(int k = 1; k < nf-1; k++){      // Reflect spec about the Nyquist to get -ve freqs
-            cfft[k]        = xfft[k];
-            cfft[2*nf-2-k] = xfft[k].conjg();
+            xfftRe[k] *= taper;
+            xfftIm[k] *= taper;
         }
 
-        float[] foo = Cmplx.fftInverse(cfft, ndata);
-
+     // realInverse supplies the -ve freqs (the conjugates of the +ve ones) itself
         double[] dfoo=new double[ndata];
-        for (int i=0; i<foo.length; i++){
-            dfoo[i] = (double)foo[i];
-        }
+        fft.realInverse(xfftRe, xfftIm, dfoo, ndata);
         return dfoo;
 
 /**
@@ -530,62 +600,150 @@ public class MetricData
 
     } // end getWindowedData
 
-
+/**
+ *  getSpillOver - Return a bounded view of this day for use as the next day of the day before it
+ *                 (see setNextMetricData). getWindowedData() only reads the first DataSet of the
+ *                 next day, so each channel keeps just the points of its first DataSet that start
+ *                 before endTime (microsecs since 1970), copied so that the rest of this day can be
+ *                 released.
+ */
+    public MetricData getSpillOver(long endTime)
+    {
+        Hashtable<String, ArrayList<DataSet>> head = new Hashtable<String, ArrayList<DataSet>>();
+        if (data != null) {
+            for (String key : data.keySet()) {
+                ArrayList<DataSet> list = copyHead(data.get(key), endTime);
+                if (list != null) {
+                    head.put(key, list);
+                }
+            }
+        }
+        MetricData spillOver = new MetricData(null, head, metadata);
+     // Channels which have not been decoded yet are left to the spill-over, which only decodes
+     //   the records starting before endTime
+        if (recordIndex != null) {
+            spillOver.recordIndex  = recordIndex.head(endTime);
+            spillOver.spillOverEnd = Math.min(endTime, spillOverEnd);
+        }
+        return spillOver;
+    }
 
 /**
- *  Return a full day (86400 sec) array of data assembled from a channel's DataSets
- *  Zero pad any gaps between DataSets
+ *  copyHead - Return a copy of the points of the first DataSet that start before endTime, or
+ *             null if there are none
  */
-    public double[] getPaddedDayData(Channel channel) 
+    private static ArrayList<DataSet> copyHead(ArrayList<DataSet> datasets, long endTime)
     {
-        if (!hasChannelData(channel)){
-            System.out.format("== MetricData.getPaddedDayData() ERROR: We have NO data for channel=[%s]\n", channel);
+        if (datasets == null || datasets.size() == 0) {
             return null;
         }
-        ArrayList<DataSet>datasets = getChannelData(channel);
-
-        long dayStartTime = metadata.getTimestamp().getTimeInMillis() * 1000; // epoch microsecs since 1970
-        long interval     = datasets.get(0).getInterval();                    // sample dt in microsecs
+        DataSet first = datasets.get(0);
+        long interval = first.getInterval();
+        if (first.getStartTime() >= endTime || interval <= 0) {
+            return null;
+        }
+        int npts = (int)((endTime - first.getStartTime() + interval - 1) / interval);
+        if (npts > first.getLength()) {
+            npts = first.getLength();
+        }
 
-        int nPointsPerDay = (int)(86400000000L/interval);
+        DataSet copy = new DataSet();
+        copy.setNetwork(first.getNetwork());
+        copy.setStation(first.getStation());
+        copy.setLocation(first.getLocation());
+        copy.setChannel(first.getChannel());
+        copy.setStartTime(first.getStartTime());
+        if (first.isCompressed()) {
+            copy.compress();
+        }
+        try {
+            copy.setSampleRate(first.getSampleRate());
+            if (first.isCountOnly()) {
+                copy.extendEmpty(npts);
+            }
+            else {
+                copy.extend(first.getSeries(0, npts), 0, npts);
+            }
+        }
+        catch (IllegalSampleRateException e) {
+            throw new RuntimeException("MetricData.getSpillOver(): " + e);
+        }
+        catch (SequenceRangeException e) {
+            throw new RuntimeException("MetricData.getSpillOver(): " + e);
+        }
+        ArrayList<DataSet> list = new ArrayList<DataSet>(1);
+        list.add(copy);
+        return list;
+    }
 
-        double[] data     = new double[nPointsPerDay];
 
-        long lastEndTime = 0;
-        int k=0;
 
-        for (int i=0; i<datasets.size(); i++) {
-            DataSet dataset= datasets.get(i);
-            long startTime = dataset.getStartTime();  // microsecs since Jan. 1, 1970
-            long endTime   = dataset.getEndTime();
-            int length     = dataset.getLength();
-            int[] series   = dataset.getSeries();
-
-            if (i == 0) {
-                lastEndTime = dayStartTime;
-            }
-            int npad = (int)( (startTime - lastEndTime) / interval ) - 1;
+/**
+ *  setSegmentSpectraLimit - Set the most memory (in bytes) the kept segment spectra may take in all.
+ */
+    public void setSegmentSpectraLimit(long maxSegmentSpectraBytes)
+    {
+        this.maxSegmentSpectraBytes = maxSegmentSpectraBytes;
+    }
 
-            for (int j=0; j<npad; j++){
-                if (k < data.length) {
-                    data[k] = 0.;
-                }
-                k++;
-            }
-            for (int j=0; j<length; j++){
-                if (k < data.length) {
-                    data[k] = (double)series[j];
+/**
+ *  getSegmentSpectra - Return the windowed segment spectra of a channel (see SegmentSpectra).
+ *                      They are kept for the rest of the day, unless that would take more than
+ *                      the segment spectra limit in all, in which case they are computed on demand.
+ *                      Kept spectra are computed once, even when several metrics running at the
+ *                      same time ask for them; on-demand spectra are a new object for each caller.
+ */
+    public SegmentSpectra getSegmentSpectra(Channel channel, int nsegPnts, int noff, final int nfft)
+    {
+        String key = String.format("%s-%s:%d:%d:%d", channel.getLocation(), channel.getChannel(), nsegPnts, noff, nfft);
+        SegmentSpectra spectra = segmentSpectra.get(key);
+        if (spectra != null) {
+            return spectra;
+        }
+        if (!hasChannelData(channel)){
+            System.out.format("== MetricData.getSegmentSpectra() ERROR: We have NO data for channel=[%s]\n", channel);
+            return null;
+        }
+     // The channel is resolved (and, with a record index, decoded) without holding any lock here,
+     //   so metrics working on other channels are not held up
+     // The windows are filled straight from the DataSets (see SegmentIterator), 
+     //   rather than from a full day array of doubles
+        long dayStartTime = metadata.getTimestamp().getTimeInMillis() * 1000;
+        final SegmentIterator segments = new SegmentIterator(getChannelData(channel), dayStartTime, nsegPnts, noff);
+        long bytes = SegmentSpectra.getKeptSize(segments.getDayLength(), nsegPnts, noff, nfft);
+     // Only the limit is checked under the lock; the first thread to register a key computes its
+     //   spectra and any other thread asking for the key waits for them (see ComputeOnceTable)
+        synchronized (segmentSpectra) {
+            if (segmentSpectraBytes + bytes <= maxSegmentSpectraBytes) {
+                boolean added = segmentSpectra.add(key, new Callable<SegmentSpectra>() {
+                    public SegmentSpectra call() {
+                        return new SegmentSpectra(segments, nfft, true);
+                    }
+                });
+                if (added) {
+                    segmentSpectraBytes += bytes;
                 }
-                k++;
             }
-
-            lastEndTime = endTime;
         }
-        //System.out.format("== fullDayData: nDataSets=%d interval=%d nPointsPerDay%d k=%d\n", datasets.size(),
-                          //interval, nPointsPerDay, k );
-        return data;
+        spectra = segmentSpectra.get(key);
+        if (spectra != null) {
+            return spectra;
+        }
+        return new SegmentSpectra(segments, nfft, false);
     }
 
+/**
+ *  getDayLength - Return the number of points in a full day of data for this channel
+ *                 (i.e., the number of points the PSD windows span, see SegmentIterator)
+ */
+    public int getDayLength(Channel channel)
+    {
+        if (!hasChannelData(channel)){
+            return 0;
+        }
+        long interval = getChannelData(channel).get(0).getInterval();   // sample dt in microsecs
+        return (int)(86400000000L/interval);
+    }
 
 /*
  *  Rotate/Create new derived channels: (chan1, chan2) --> (chanN, chanE)
@@ -730,8 +888,7 @@ public class MetricData
         String northString  = location + "-" + channelPrefix + "ND"; // e.g., "10-BHND"
         String eastString   = location + "-" + channelPrefix + "ED"; // e.g., "10-BHED"
 
-        Set<String> keys = data.keySet();
-        for (String key : keys){   
+        for (String key : getChannelKeys()){   
            if (key.contains(lookupString)) { // "LH1" --> "LHND" and "LHED"
                 northKey = key.replaceAll(lookupString, northString);
                 eastKey  = key.replaceAll(lookupString, eastString);
@@ -976,7 +1133,13 @@ public class MetricData
 
         if (metricReader.isConnected()) {   // Retrieve old Digest from Database and compare to new Digest
             //System.out.println("=== MetricData.metricReader *IS* connected");
-            ByteBuffer oldDigest = metricReader.getMetricValueDigest(id);
+            ByteBuffer oldDigest = null;
+            if (storedDigests != null) {
+                oldDigest = storedDigests.get(MetricReader.createDigestKey(id));
+            }
+            else {
+                oldDigest = metricReader.getMetricValueDigest(id);
+            }
             if (oldDigest == null) {
                 logger.fine("Old digest is null.");
             }
@@ -1003,6 +1166,26 @@ public class MetricData
     }
 
 
+/**
+ *  loadValueDigests - Read every metric value digest stored for this station-day in one query,
+ *                     so that valueDigestChanged() can compare digests without a database
+ *                     round-trip per metric + channel. If the query fails, each digest is
+ *                     still read individually.
+ */
+    public void loadValueDigests()
+    {
+        if (metricReader == null || metadata == null || !metricReader.isConnected()) {
+            return;
+        }
+        Station station = new Station(metadata.getNetwork(), metadata.getStation());
+        MetricValueIdentifier id = new MetricValueIdentifier(metadata.getTimestamp(), null, station, null);
+        storedDigests = metricReader.getMetricValueDigests(id);
+        if (storedDigests != null) {
+            logger.info(String.format("loadValueDigests: Read %d stored digests for Station=[%s] Day=[%s]",
+                                       storedDigests.size(), station, EpochData.epochToDateString(metadata.getTimestamp())));
+        }
+    }
+
 /**
  *  getHash - Return the multi-buffer hash for a specified channel Array (data + metadata digest)
  */
@@ -1046,7 +1229,30 @@ public class MetricData
             }
         }
 
-        return MemberDigest.multiBuffer(digests);
+     // The channel digests are memoized, so while none of them has changed they are the same
+     //   ByteBuffers as last time, and so is their multi-buffer hash
+        String key = channels.toString();
+        synchronized (channelArrayHashes) {
+            ArrayList<ByteBuffer> lastDigests = channelArrayDigests.get(key);
+            if (lastDigests != null && lastDigests.size() == digests.size()) {
+                boolean same = true;
+                for (int i=0; i<digests.size(); i++) {
+                    if (lastDigests.get(i) != digests.get(i)) {
+                        same = false;
+                        break;
+                    }
+                }
+                if (same) {
+                    return channelArrayHashes.get(key);
+                }
+            }
+            ByteBuffer hash = MemberDigest.multiBuffer(digests);
+            if (hash != null) {
+                channelArrayHashes.put(key, hash);
+                channelArrayDigests.put(key, digests);
+            }
+            return hash;
+        }
     }
 
 /**
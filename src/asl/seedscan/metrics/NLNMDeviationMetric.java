@@ -54,6 +54,11 @@ extends PowerBandMetric
         return "NLNMDeviationMetric";
     }
 
+    @Override public String[] getChannelBands()
+    {
+        return new String[] {"LH"};
+    }
+
     public NLNMDeviationMetric(){
         super();
         addArgument("nlnm-modelfile");
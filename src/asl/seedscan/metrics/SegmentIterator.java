@@ -0,0 +1,145 @@
+/*
+ * Copyright 2012, United States Geological Survey or
+ * third-party contributors as indicated by the @author tags.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/  >.
+ *
+ */
+package asl.seedscan.metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import asl.seedsplitter.DataSet;
+import asl.seedsplitter.SequenceRangeException;
+
+/**
+ * Steps through the overlapping windows of one channel-day, as used by
+ * Metric.computePSD(), without assembling the day into a double array:
+ * each window of nsegPnts points (offset by noff points) is copied from
+ * the channel's DataSets into a reusable buffer, and any gaps in the data
+ * are zero-filled as the window is filled.
+ *
+ * The day holds 86400 seconds of points (see getDayLength()), on which
+ * the DataSets are laid out one after the other: a gap of n intervals 
+ * between the end of one DataSet and the start of the next is filled with
+ * n - 1 zeros, and the start of the day counts as the end of the DataSet 
+ * before the first one. Points past the end of the day are dropped, and
+ * the day is zero-filled after the last DataSet.
+ */
+public class SegmentIterator
+{
+    private ArrayList<DataSet> datasets;
+    private int[] dayIndex;
+    private int nsegPnts;
+    private int noff;
+    private int ndata;
+    private int nseg;
+
+    private double[] buffer = null;
+    private int next = 0;
+
+    public SegmentIterator(ArrayList<DataSet> datasets, long dayStartTime, int nsegPnts, int noff)
+    {
+        this.datasets = datasets;
+        this.nsegPnts = nsegPnts;
+        this.noff     = noff;
+
+        long interval = datasets.get(0).getInterval();      // sample dt in microsecs
+        this.ndata    = (int)(86400000000L/interval);
+        this.nseg     = SegmentSpectra.getWindowCount(ndata, nsegPnts, noff);
+
+     // The index within the day of the first point of each DataSet
+        dayIndex = new int[datasets.size()];
+        long lastEndTime = dayStartTime;
+        int k = 0;
+        for (int i = 0; i < datasets.size(); i++) {
+            DataSet dataset = datasets.get(i);
+            int npad = (int)( (dataset.getStartTime() - lastEndTime) / interval ) - 1;
+            if (npad > 0) {
+                k += npad;
+            }
+            dayIndex[i] = k;
+            k += dataset.getLength();
+            lastEndTime = dataset.getEndTime();
+        }
+    }
+
+ // The number of points in the (padded) day
+    public int getDayLength()
+    {
+        return ndata;
+    }
+
+    public int getSegmentLength()
+    {
+        return nsegPnts;
+    }
+
+    public int getSegmentCount()
+    {
+        return nseg;
+    }
+
+    public boolean hasNext()
+    {
+        return next < nseg;
+    }
+
+/**
+ * Returns the next window. The returned buffer is reused, so its
+ * contents are only valid until the next call.
+ */
+    public double[] next()
+    {
+        if (buffer == null) {
+            buffer = new double[nsegPnts];
+        }
+        getSegment(next++, buffer);
+        return buffer;
+    }
+
+/**
+ * Fills buffer[0:nsegPnts-1] with window iseg.
+ */
+    public void getSegment(int iseg, double[] buffer)
+    {
+        if (iseg < 0 || iseg >= nseg) {
+            throw new IndexOutOfBoundsException("segment " + iseg + " of " + nseg);
+        }
+        int segStart = iseg * noff;
+        int segEnd   = segStart + nsegPnts;
+
+        Arrays.fill(buffer, 0, nsegPnts, 0.);
+        for (int i = 0; i < datasets.size(); i++) {
+            int dataStart = dayIndex[i];
+            if (dataStart >= segEnd) {
+                break;
+            }
+            DataSet dataset = datasets.get(i);
+            int dataEnd = dataStart + dataset.getLength();
+            if (dataEnd <= segStart) {
+                continue;
+            }
+            int from = Math.max(segStart, dataStart);
+            int to   = Math.min(segEnd, dataEnd);
+            try {
+                dataset.copySeries(from - dataStart, to - from, buffer, from - segStart);
+            }
+            catch (SequenceRangeException e) {
+                throw new RuntimeException("SegmentIterator: " + e);
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2012, United States Geological Survey or
+ * third-party contributors as indicated by the @author tags.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/  >.
+ *
+ */
+package asl.seedscan.metrics;
+
+import freq.FFT;
+import timeutils.Timeseries;
+
+/**
+ * The spectra of the overlapping windows of one channel-day, as used by
+ * Metric.computePSD(): each window of nsegPnts points (offset by noff
+ * points) is detrended, debiased, cosine tapered and transformed into
+ * nfft/2 + 1 positive frequencies.
+ *
+ * The spectra depend only on the channel (not on the channel it is
+ * paired with), so MetricData keeps them for the day and every auto and
+ * cross spectrum of the channel reuses them. When a channel-day is too
+ * large to keep, each window is instead computed when it is requested.
+ *
+ * The windows are read from the channel's DataSets through a
+ * SegmentIterator, so the day is never held as a double array.
+ */
+public class SegmentSpectra
+{
+    private int nsegPnts;
+    private int nfft;
+    private int nf;
+    private int nwin;
+    private double wss = 0.;
+
+ // Kept spectra: [window][frequency]
+    private double[][] re = null;
+    private double[][] im = null;
+
+ // On-demand: the windows + the most recently computed one
+    private SegmentIterator segments = null;
+    private double[] seg = null;
+    private double[] currentRe = null;
+    private double[] currentIm = null;
+    private int current = -1;
+
+    public SegmentSpectra(SegmentIterator segments, int nfft, boolean keep)
+    {
+        this.nsegPnts = segments.getSegmentLength();
+        this.nfft     = nfft;
+        this.nf       = nfft/2 + 1;
+        this.nwin     = segments.getSegmentCount();
+
+        if (keep) {
+            re = new double[nwin][];
+            im = new double[nwin][];
+            for (int iwin = 0; iwin < nwin; iwin++) {
+                re[iwin] = new double[nf];
+                im[iwin] = new double[nf];
+                transform(segments.next(), re[iwin], im[iwin]);
+            }
+        }
+        else {
+            this.segments = segments;
+            seg = new double[nsegPnts];
+            currentRe = new double[nf];
+            currentIm = new double[nf];
+            if (nwin > 0) {
+                load(0);
+            }
+        }
+    }
+
+ // The windows used by computePSD: the last one ends at or before ndata
+    public static int getWindowCount(int ndata, int nsegPnts, int noff)
+    {
+        int nwin = 0;
+        for (int ilst = nsegPnts - 1; ilst < ndata; ilst += noff) {
+            nwin++;
+        }
+        return nwin;
+    }
+
+ // The memory needed to keep the spectra of every window
+    public static long getKeptSize(int ndata, int nsegPnts, int noff, int nfft)
+    {
+        return (long)getWindowCount(ndata, nsegPnts, noff) * (nfft/2 + 1) * 2 * 8;
+    }
+
+    public boolean isKept()
+    {
+        return re != null;
+    }
+
+    public int getWindowCount()
+    {
+        return nwin;
+    }
+
+    public int getFrequencyCount()
+    {
+        return nf;
+    }
+
+ // Sum of the squared taper weights (the same for every window)
+    public double getTaperWeight()
+    {
+        return wss;
+    }
+
+    public double[] getReal(int iwin)
+    {
+        if (re != null) {
+            return re[iwin];
+        }
+        load(iwin);
+        return currentRe;
+    }
+
+    public double[] getImag(int iwin)
+    {
+        if (im != null) {
+            return im[iwin];
+        }
+        load(iwin);
+        return currentIm;
+    }
+
+    private void load(int iwin)
+    {
+        if (iwin != current) {
+            segments.getSegment(iwin, seg);
+            transform(seg, currentRe, currentIm);
+            current = iwin;
+        }
+    }
+
+ // Detrends, debiases + tapers the window in place, then transforms it
+    private void transform(double[] seg, double[] segRe, double[] segIm)
+    {
+        Timeseries.detrend(seg);
+        Timeseries.debias(seg);
+        wss = Timeseries.costaper(seg,.10);
+        FFT.getInstance(nfft).realForward(seg, nsegPnts, segRe, segIm);
+    }
+}
@@ -51,6 +51,11 @@ extends PowerBandMetric
         return "StationDeviationMetric";
     }
 
+    @Override public String[] getChannelBands()
+    {
+        return new String[] {"LH"};
+    }
+
     private double[] ModelPeriods;
     private double[] ModelPowers;
     private String   ModelDir;
@@ -43,6 +43,11 @@ extends Metric
         return "TimingQualityMetric";
     }
 
+    @Override public boolean isHeaderOnly()
+    {
+        return true;
+    }
+
 
     public void process()
     {
@@ -30,6 +30,8 @@ public class ByteBlock
     private int m_skippedBytes = 0;
     private boolean m_fileEnd = false;
     private boolean m_lastBlock = false;
+    private int m_fileIndex = -1;
+    private long m_offset = -1;
 
     /**
      * Constructor.
@@ -172,6 +174,38 @@ public class ByteBlock
         m_fileEnd = end;
     }
 
+    /**
+     * Records where this block was read from (see {@link RecordIndex}).
+     * 
+     * @param fileIndex	Index of the file in the SeedSplitter's file list.
+     * @param offset	Byte offset of the block within the file.
+     */
+    public void setLocation(int fileIndex, long offset)
+    {
+        m_fileIndex = fileIndex;
+        m_offset = offset;
+    }
+
+    /**
+     * Returns the index of the file this block was read from.
+     * 
+     * @return The file index, or -1 if the location is unknown.
+     */
+    public int getFileIndex()
+    {
+        return m_fileIndex;
+    }
+
+    /**
+     * Returns the byte offset of this block within its file.
+     * 
+     * @return The byte offset, or -1 if the location is unknown.
+     */
+    public long getOffset()
+    {
+        return m_offset;
+    }
+
     /**
      * Clear last block state.
      */
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2012, United States Geological Survey or
+ * third-party contributors as indicated by the @author tags.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/  >.
+ *
+ */
+package asl.seedsplitter;
+
+/**
+ * Holds a block of data points compressed as the differences between 
+ * consecutive points, each zig-zag encoded (so that small negative 
+ * differences are small numbers too) and written as a variable length 
+ * integer of 7 bits per byte. Differences of up to +/-63 take a single
+ * byte and differences of up to +/-8191 take two, so typical seismic data
+ * takes 1-2 bytes per data point rather than 4.
+ *
+ * Differences are computed with int arithmetic, which wraps around, so 
+ * every int series is restored exactly. A block whose differences would
+ * take more than 4 bytes per data point on average (e.g. white noise over
+ * the full int range) is stored as plain 4-byte values instead.
+ */
+public class CompressedBlock
+{
+    private byte[] m_data;
+    private int m_count;
+    private boolean m_raw;
+
+    /**
+     * Constructor. Compresses a run of data points.
+     * 
+     * @param samples	The array holding the data points.
+     * @param offset	Index of the first data point to compress.
+     * @param count		The number of data points to compress.
+     */
+    public CompressedBlock(int[] samples, int offset, int count)
+    {
+        int end = offset + count;
+        int size = 0;
+        int last = 0;
+        for (int i = offset; i < end; i++) {
+            size += encodedSize(zigZag(samples[i] - last));
+            last = samples[i];
+        }
+
+        m_count = count;
+        int position = 0;
+        if (size >= count * 4) {
+            m_raw = true;
+            m_data = new byte[count * 4];
+            for (int i = offset; i < end; i++) {
+                int value = samples[i];
+                m_data[position++] = (byte)(value >>> 24);
+                m_data[position++] = (byte)(value >>> 16);
+                m_data[position++] = (byte)(value >>> 8);
+                m_data[position++] = (byte)value;
+            }
+            return;
+        }
+
+        m_data = new byte[size];
+        last = 0;
+        for (int i = offset; i < end; i++) {
+            int value = zigZag(samples[i] - last);
+            last = samples[i];
+            while ((value & ~0x7F) != 0) {
+                m_data[position++] = (byte)((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            m_data[position++] = (byte)value;
+        }
+    }
+
+    /**
+     * Returns the number of data points in this block.
+     * 
+     * @return The number of data points.
+     */
+    public int getCount()
+    {
+        return m_count;
+    }
+
+    /**
+     * Returns the size of the compressed data.
+     * 
+     * @return The number of bytes of compressed data.
+     */
+    public int getByteCount()
+    {
+        return m_data.length;
+    }
+
+    /**
+     * Decompresses a run of this block's data points into an array. The 
+     * data points before the run are decoded too (but not stored), as each
+     * point depends on the one before it, unless the block is stored raw.
+     * 
+     * @param index		Index of the first data point to decompress.
+     * @param count		The number of data points to decompress.
+     * @param buffer	The array into which the data points are decompressed.
+     * @param offset	The position in buffer of the first data point.
+     */
+    public void decompress(int index, int count, int[] buffer, int offset)
+    {
+        if (m_raw) {
+            for (int i = index * 4, end = (index + count) * 4; i < end; i += 4) {
+                buffer[offset++] = (((m_data[i] & 0xFF) << 24) | ((m_data[i+1] & 0xFF) << 16) |
+                                      ((m_data[i+2] & 0xFF) << 8) | (m_data[i+3] & 0xFF));
+            }
+            return;
+        }
+        int end = index + count;
+        int position = 0;
+        int value = 0;
+        for (int i = 0; i < end; i++) {
+            int shift = 0;
+            int encoded = 0;
+            byte b;
+            do {
+                b = m_data[position++];
+                encoded |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            value += (encoded >>> 1) ^ -(encoded & 1);
+            if (i >= index) {
+                buffer[offset++] = value;
+            }
+        }
+    }
+
+    /**
+     * Decompresses a run of this block's data points into an array of doubles.
+     * 
+     * @param index		Index of the first data point to decompress.
+     * @param count		The number of data points to decompress.
+     * @param buffer	The array into which the data points are decompressed.
+     * @param offset	The position in buffer of the first data point.
+     */
+    public void decompress(int index, int count, double[] buffer, int offset)
+    {
+        if (m_raw) {
+            for (int i = index * 4, end = (index + count) * 4; i < end; i += 4) {
+                buffer[offset++] = (double)(((m_data[i] & 0xFF) << 24) | ((m_data[i+1] & 0xFF) << 16) |
+                                      ((m_data[i+2] & 0xFF) << 8) | (m_data[i+3] & 0xFF));
+            }
+            return;
+        }
+        int end = index + count;
+        int position = 0;
+        int value = 0;
+        for (int i = 0; i < end; i++) {
+            int shift = 0;
+            int encoded = 0;
+            byte b;
+            do {
+                b = m_data[position++];
+                encoded |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            value += (encoded >>> 1) ^ -(encoded & 1);
+            if (i >= index) {
+                buffer[offset++] = (double)value;
+            }
+        }
+    }
+
+    private static int zigZag(int value)
+    {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int encodedSize(int value)
+    {
+        if ((value & ~0x7F) == 0) {
+            return 1;
+        }
+        if ((value & ~0x3FFF) == 0) {
+            return 2;
+        }
+        if ((value & ~0x1FFFFF) == 0) {
+            return 3;
+        }
+        if ((value & ~0xFFFFFFF) == 0) {
+            return 4;
+        }
+        return 5;
+    }
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright 2012, United States Geological Survey or
+ * third-party contributors as indicated by the @author tags.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/  >.
+ *
+ */
+package asl.seedsplitter;
+
+import seed.IllegalSeednameException;
+import seed.MiniSeed;
+
+/**
+ * The RecordHeader class decodes the fixed header of MiniSEED records, one
+ * record after another, without allocating anything per record: the fields
+ * are read straight from the record's bytes, the start time is computed 
+ * arithmetically, and each channel's names and key are looked up in a small
+ * cache keyed by the header's raw name and sample rate bytes.
+ *
+ * The values match those of the MiniSeed crack*() methods (e.g., the same 
+ * byte order detection as MiniSeed.swapNeeded(), which handles any record 
+ * this class does not recognize).
+ *
+ * A RecordHeader is not thread safe, each SeedSplitProcessor has its own.
+ */
+public class RecordHeader
+{
+    private static final int CACHE_SIZE = 64;  // A power of 2
+    private static final int CACHE_LIMIT = 48; // Entries kept before the cache is cleared
+
+    private byte[] m_buf = null;
+    private boolean m_swap = false;
+    private ChannelNames m_names = null;
+
+    // Channel names, keyed by header bytes 8-19 (station, location, channel, 
+    // network), the sample rate factor + multiplier and the byte order
+    private long[] m_cacheNames = new long[CACHE_SIZE];
+    private long[] m_cacheRates = new long[CACHE_SIZE];
+    private ChannelNames[] m_cacheEntries = new ChannelNames[CACHE_SIZE];
+    private int m_cacheCount = 0;
+
+    /**
+     * The names and the channel key shared by every record of a channel.
+     */
+    private static class ChannelNames
+    {
+        private boolean swap;
+        private String network;
+        private String station;
+        private String location;
+        private String channel;
+        private double sampleRate;
+        private String key;
+    }
+
+    /**
+     * Decodes the header of a record, which the get*() methods then describe.
+     * The record must not be a heartbeat (see MiniSeed.crackIsHeartBeat()).
+     *
+     * @param buf	A raw MiniSEED record.
+     *
+     * @throws IllegalSeednameException if the record is clearly not MiniSEED.
+     */
+    public void crack(byte[] buf)
+    throws IllegalSeednameException
+    {
+        m_buf = buf;
+        m_swap = swapNeeded(buf);
+
+        long names = getLong(buf, 8);
+        long rates = ((long)getInt(buf, 16) << 32) | (getInt(buf, 32) & 0xffffffffL);
+        int slot = (int)(mix(names ^ (rates * 31L)) & (CACHE_SIZE - 1));
+        ChannelNames entry;
+        while ((entry = m_cacheEntries[slot]) != null) {
+            if ((m_cacheNames[slot] == names) && (m_cacheRates[slot] == rates) && (entry.swap == m_swap)) {
+                m_names = entry;
+                return;
+            }
+            slot = (slot + 1) & (CACHE_SIZE - 1);
+        }
+
+        if (m_cacheCount >= CACHE_LIMIT) {
+            clearCache();
+            slot = (int)(mix(names ^ (rates * 31L)) & (CACHE_SIZE - 1));
+        }
+        m_names = newChannelNames();
+        m_cacheNames[slot] = names;
+        m_cacheRates[slot] = rates;
+        m_cacheEntries[slot] = m_names;
+        m_cacheCount++;
+    }
+
+    private void clearCache()
+    {
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            m_cacheEntries[i] = null;
+        }
+        m_cacheCount = 0;
+    }
+
+    private ChannelNames newChannelNames()
+    {
+        ChannelNames names = new ChannelNames();
+        names.swap = m_swap;
+        names.network  = getText(18, 2);
+        names.station  = getText(8, 5);
+        names.location = getText(13, 2);
+        if (names.location.equals("")) {
+            names.location = "--";  // Default location
+        }
+        names.channel  = getText(15, 3);
+        names.sampleRate = computeSampleRate();
+        names.key = String.format("%s_%s %s-%s (%.1f Hz)", names.network, names.station,
+                                  names.location, names.channel, names.sampleRate).intern();
+        return names;
+    }
+
+    private String getText(int offset, int length)
+    {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char)(m_buf[offset + i] & 0xff);
+        }
+        return new String(chars).trim().intern();
+    }
+
+    /**
+     * Same as MiniSeed.crackRate().
+     */
+    private double computeSampleRate()
+    {
+        short rateFactor = getShort(32);
+        short rateMultiplier = getShort(34);
+        double rate = rateFactor;
+        if (rateFactor == 0 || rateMultiplier == 0) {
+            return 0;
+        }
+        if (rate >= 0) {
+            if (rateMultiplier > 0) {
+                rate *= rateMultiplier;
+            } else {
+                rate /= -rateMultiplier;
+            }
+        }
+        else {
+            if (rateMultiplier > 0) {
+                rate = -rateMultiplier / rate;
+            } else {
+                rate = -1. / (-rateMultiplier) / rate;
+            }
+        }
+        return rate;
+    }
+
+    public String getNetwork()
+    {
+        return m_names.network;
+    }
+
+    public String getStation()
+    {
+        return m_names.station;
+    }
+
+    /**
+     * @return The location code, or "--" if it is blank.
+     */
+    public String getLocation()
+    {
+        return m_names.location;
+    }
+
+    public String getChannel()
+    {
+        return m_names.channel;
+    }
+
+    /**
+     * @return The sample rate in Hz, or 0 if the rate factor or multiplier is 0.
+     */
+    public double getSampleRate()
+    {
+        return m_names.sampleRate;
+    }
+
+    /**
+     * Returns the key under which SeedSplitProcessor stores the channel's data,
+     * e.g., "IU_ANMO 00-LHZ (1.0 Hz)". It is the same String for every record
+     * of the channel.
+     */
+    public String getKey()
+    {
+        return m_names.key;
+    }
+
+    public boolean isSwapped()
+    {
+        return m_swap;
+    }
+
+    public int getSequence()
+    {
+        int sequence = 0;
+        for (int i = 0; i < 6; i++) {
+            sequence = sequence * 10 + (m_buf[i] - '0');
+        }
+        return sequence;
+    }
+
+    public int getNsamp()
+    {
+        return getShort(30);
+    }
+
+    /**
+     * @return The time of the record's first sample in microseconds since the epoch.
+     */
+    public long getStartTime()
+    {
+        return startTime(getShort(20), getShort(22), m_buf[24] & 0xff, m_buf[25] & 0xff,
+                         m_buf[26] & 0xff, getShort(28) & 0xffff);
+    }
+
+    /**
+     * Converts a SEED time to microseconds since the epoch (GMT).
+     *
+     * @param year		The year.
+     * @param doy		The day of the year (1 - 366).
+     * @param hour		The hour.
+     * @param minute	The minute.
+     * @param second	The second.
+     * @param husec		Ten-thousandths of a second.
+     */
+    public static long startTime(int year, int doy, int hour, int minute, int second, int husec)
+    {
+        // Days from 0001-01-01 to the start of the year, less those up to 1970-01-01
+        long y = year - 1;
+        long days = 365L * y + y / 4 - y / 100 + y / 400 - 719162L + (doy - 1);
+        long seconds = ((days * 24 + hour) * 60 + minute) * 60 + second;
+        return seconds * 1000000L + husec * 100L;
+    }
+
+    /**
+     * The same decision as MiniSeed.swapNeeded(), which is left to decide (and report)
+     * anything but the usual layouts of blockettes.
+     */
+    private static boolean swapNeeded(byte[] buf)
+    throws IllegalSeednameException
+    {
+        for (int i = 0; i < 6; i++) {
+            if ((buf[i] < '0') || (buf[i] > '9')) {
+                return MiniSeed.swapNeeded(buf);
+            }
+        }
+        if (((buf[6] != 'D') && (buf[6] != 'R') && (buf[6] != 'Q')) || (buf[7] != ' ')) {
+            return MiniSeed.swapNeeded(buf);
+        }
+
+        int nblks = buf[39];
+        if (nblks <= 0) {
+            // No blockette 1000, so decide based on where the data starts
+            int offset = getShort(buf, 44, false);
+            return (offset < 0) || (offset > 512);
+        }
+
+        boolean little = false;
+        int offset = getShort(buf, 46, false);
+        if ((offset > 64) || (offset < 48)) {
+            offset = getShort(buf, 46, true);
+            if ((offset > 200) || (offset < 0)) {
+                return MiniSeed.swapNeeded(buf);
+            }
+            little = true;
+        }
+        for (int i = 0; i < nblks; i++) {
+            if ((offset < 48) || (offset > 64)) {
+                return MiniSeed.swapNeeded(buf);
+            }
+            int type = getShort(buf, offset, little);
+            int next = getShort(buf, offset + 2, little);
+            if (type == 1000) {
+                if (buf[offset + 5] == 0) {
+                    return little ? true : MiniSeed.swapNeeded(buf);
+                }
+                return false;
+            }
+            offset = next;
+        }
+        return little;
+    }
+
+    private short getShort(int offset)
+    {
+        return getShort(m_buf, offset, m_swap);
+    }
+
+    private static short getShort(byte[] buf, int offset, boolean little)
+    {
+        if (little) {
+            return (short)((buf[offset + 1] << 8) | (buf[offset] & 0xff));
+        }
+        return (short)((buf[offset] << 8) | (buf[offset + 1] & 0xff));
+    }
+
+    // Raw (big-endian) values, only used as cache keys
+    private static int getInt(byte[] buf, int offset)
+    {
+        return (buf[offset] << 24) | ((buf[offset + 1] & 0xff) << 16) |
+               ((buf[offset + 2] & 0xff) << 8) | (buf[offset + 3] & 0xff);
+    }
+
+    private static long getLong(byte[] buf, int offset)
+    {
+        return ((long)getInt(buf, offset) << 32) | (getInt(buf, offset + 4) & 0xffffffffL);
+    }
+
+    private static long mix(long value)
+    {
+        value ^= (value >>> 33);
+        value *= 0xff51afd7ed558ccdL;
+        value ^= (value >>> 33);
+        return value;
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright 2012, United States Geological Survey or
+ * third-party contributors as indicated by the @author tags.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/  >.
+ *
+ */
+package asl.seedsplitter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Logger;
+
+import asl.concurrent.FallOffQueue;
+
+/**
+ * The RecordIndex class lists where each channel's MiniSEED records are 
+ * stored (file, byte offset and length), along with their start times and
+ * sample counts, so that a channel's data can be decoded only once it is
+ * needed (see {@link SeedSplitter#setIndexOnly(boolean)}).
+ *
+ * A channel's records are decoded the first time its data is requested,
+ * exactly as they would have been by a full split of the same files. The
+ * decoded DataSets are cached behind soft references, so channels which
+ * are no longer in use may be released under memory pressure, in which 
+ * case they are decoded again if they are requested again.
+ */
+public class RecordIndex
+{
+    private static final Logger logger = Logger.getLogger("asl.seedsplitter.RecordIndex");
+
+    private File[] m_files;
+    private Hashtable<String,ArrayList<Record>> m_records;
+    private Hashtable<String,SoftReference<ArrayList<DataSet>>> m_decoded;
+    private boolean m_compressed = false;
+
+    /**
+     * The location + header summary of a single record.
+     */
+    private static class Record
+    {
+        private final int  fileIndex;
+        private final long offset;
+        private final int  length;
+        private final long startTime;
+        private final int  nsamp;
+
+        private Record(int fileIndex, long offset, int length, long startTime, int nsamp)
+        {
+            this.fileIndex = fileIndex;
+            this.offset    = offset;
+            this.length    = length;
+            this.startTime = startTime;
+            this.nsamp     = nsamp;
+        }
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param files	The files from which records are indexed, in the SeedSplitter's order.
+     */
+    public RecordIndex(File[] files)
+    {
+        m_files = files;
+        m_records = new Hashtable<String,ArrayList<Record>>();
+        m_decoded = new Hashtable<String,SoftReference<ArrayList<DataSet>>>();
+    }
+
+    /**
+     * Controls whether decoded channels store their data points compressed
+     * (see {@link Sequence#compress()}).
+     * 
+     * @param compressed	True if the data points should be compressed.
+     */
+    public void setCompressed(boolean compressed)
+    {
+        m_compressed = compressed;
+    }
+
+    /**
+     * Adds a record to the end of a channel's list of records.
+     * 
+     * @param key		The channel key (e.g., "IU_ANMO 00-BHZ (40.0 Hz)").
+     * @param fileIndex	Index of the record's file.
+     * @param offset	Byte offset of the record within its file.
+     * @param length	Length of the record in bytes.
+     * @param startTime	Start time of the record (microseconds since the epoch).
+     * @param nsamp		Number of samples in the record.
+     */
+    void add(String key, int fileIndex, long offset, int length, long startTime, int nsamp)
+    {
+        ArrayList<Record> records = m_records.get(key);
+        if (records == null) {
+            records = new ArrayList<Record>();
+            m_records.put(key, records);
+        }
+        records.add(new Record(fileIndex, offset, length, startTime, nsamp));
+    }
+
+    /**
+     * Appends every channel's records from another index, which must have
+     * been built from records read after those already in this index.
+     * 
+     * @param other	The index to be appended.
+     */
+    void append(RecordIndex other)
+    {
+        for (String key: other.m_records.keySet()) {
+            ArrayList<Record> records = m_records.get(key);
+            if (records == null) {
+                records = new ArrayList<Record>();
+                m_records.put(key, records);
+            }
+            records.addAll(other.m_records.get(key));
+        }
+    }
+
+    /**
+     * Drops the channels which are not in the specified set of keys.
+     * 
+     * @param keys	The channel keys to keep.
+     */
+    void retainKeys(Set<String> keys)
+    {
+        m_records.keySet().retainAll(keys);
+    }
+
+    /**
+     * Returns the keys of every indexed channel.
+     * 
+     * @return The channel keys.
+     */
+    public Set<String> getKeys()
+    {
+        return m_records.keySet();
+    }
+
+    /**
+     * Indicates whether a channel has any records in this index.
+     * 
+     * @param key	The channel key.
+     * @return True if the channel is indexed; otherwise false.
+     */
+    public boolean containsKey(String key)
+    {
+        return m_records.containsKey(key);
+    }
+
+    /**
+     * Returns the number of records indexed for a channel.
+     * 
+     * @param key	The channel key.
+     * @return The number of records.
+     */
+    public int getRecordCount(String key)
+    {
+        ArrayList<Record> records = m_records.get(key);
+        return (records == null) ? 0 : records.size();
+    }
+
+    /**
+     * Returns the number of samples in a channel's records.
+     * 
+     * @param key	The channel key.
+     * @return The total number of samples.
+     */
+    public long getSampleCount(String key)
+    {
+        long count = 0;
+        ArrayList<Record> records = m_records.get(key);
+        if (records != null) {
+            for (Record record: records) {
+                count += record.nsamp;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns a new index holding only the records which start before the
+     * specified time, as if the files had been split with that end time
+     * (see {@link SeedSplitter#setEndTime(long)}). Channels left without 
+     * records are dropped. The new index has a cache of its own.
+     * 
+     * @param endTime	Microseconds since the epoch.
+     * @return The new index.
+     */
+    public RecordIndex head(long endTime)
+    {
+        RecordIndex head = new RecordIndex(m_files);
+        head.m_compressed = m_compressed;
+        for (String key: m_records.keySet()) {
+            ArrayList<Record> records = m_records.get(key);
+            ArrayList<Record> headRecords = new ArrayList<Record>();
+            synchronized (records) {
+                for (Record record: records) {
+                    if (record.startTime < endTime) {
+                        headRecords.add(record);
+                    }
+                }
+            }
+            if (headRecords.size() > 0) {
+                head.m_records.put(key, headRecords);
+            }
+        }
+        return head;
+    }
+
+    /**
+     * Returns a channel's DataSets, decoding its records if they have not 
+     * been decoded yet or have since been released. Each channel is decoded 
+     * by one thread at a time; threads requesting the same channel meanwhile
+     * wait for its DataSets rather than decoding them again.
+     * 
+     * @param key	The channel key.
+     * @return The channel's DataSets, or null if the channel is not indexed or could not be read.
+     */
+    public ArrayList<DataSet> getChannelData(String key)
+    {
+        ArrayList<Record> records = m_records.get(key);
+        if (records == null) {
+            return null;
+        }
+        synchronized (records) {
+            SoftReference<ArrayList<DataSet>> reference = m_decoded.get(key);
+            ArrayList<DataSet> datasets = (reference == null) ? null : reference.get();
+            if (datasets == null) {
+                datasets = decode(key, records);
+                if (datasets != null) {
+                    m_decoded.put(key, new SoftReference<ArrayList<DataSet>>(datasets));
+                }
+            }
+            return datasets;
+        }
+    }
+
+    /**
+     * Reads a channel's records back from the files and splits them in 
+     * their original order, with the same processing as a full split.
+     * 
+     * @param key		The channel key.
+     * @param records	The channel's records.
+     * @return The channel's DataSets, or null if the records could not be read.
+     */
+    private ArrayList<DataSet> decode(String key, ArrayList<Record> records)
+    {
+        LinkedBlockingQueue<ByteBlock> queue = new LinkedBlockingQueue<ByteBlock>();
+        FileChannel[] channels = new FileChannel[m_files.length];
+        try {
+            for (Record record: records) {
+                FileChannel channel = channels[record.fileIndex];
+                if (channel == null) {
+                    channel = new FileInputStream(m_files[record.fileIndex]).getChannel();
+                    channels[record.fileIndex] = channel;
+                }
+                ByteBuffer buffer = ByteBuffer.allocate(record.length);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, record.offset + buffer.position()) < 0) {
+                        throw new IOException("Unexpected end of file '" + m_files[record.fileIndex].getName() + "'");
+                    }
+                }
+                queue.add(new ByteBlock(buffer.array(), record.length));
+            }
+        } catch (IOException e) {
+            logger.severe(String.format("RecordIndex: Unable to read the records of '%s': %s", key, e.getMessage()));
+            return null;
+        } finally {
+            for (FileChannel channel: channels) {
+                if (channel != null) {
+                    try {
+                        channel.close();
+                    } catch (IOException e) {;}
+                }
+            }
+        }
+        queue.add(new ByteBlock(null, 0, true, true));
+
+        SeedSplitProcessor processor = new SeedSplitProcessor(queue, new FallOffQueue<SeedSplitProgress>(1));
+        processor.setCompressed(m_compressed);
+        processor.run();
+        logger.fine(String.format("Decoded %d records of '%s'", records.size(), key));
+        return processor.getTable().get(key);
+    }
+}
@@ -23,7 +23,6 @@ import java.io.IOException;
 import java.lang.InterruptedException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.Arrays;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.Formatter;
 import java.util.logging.Logger;
@@ -53,6 +52,8 @@ implements Runnable
     private byte[] m_buffer = null;
     private int m_bufferBytes = 0;
     private int m_skippedBytes = 0;
+    private long m_position = 0;
+    private int m_fileIndex = -1;
     private boolean m_indicateLast = true;
     private String m_digest_algorithm = "MD5";
     private MessageDigest m_digest = null;
@@ -130,6 +131,16 @@ implements Runnable
         return result;
     }
 
+    /**
+     * Sets the file index with which records are tagged, along with their
+     * offsets from the start of the stream.
+     * 
+     * @param fileIndex	Index of the stream's file in the SeedSplitter's file list.
+     */
+    public void setFileIndex(int fileIndex) {
+        m_fileIndex = fileIndex;
+    }
+
     /**
      * Causes this thread to halt gracefully.
      */
@@ -166,12 +177,12 @@ implements Runnable
                         m_running = false;
                         continue;
                     }
-                    m_bufferBytes += bytesRead;
-
-                    // Update the contents of our SHA-1 digest.
+                    // Update the contents of our digest with the bytes just read.
                     if (m_digest != null) {
-                        m_digest.update(Arrays.copyOfRange(m_buffer, m_bufferBytes, bytesRead));
+                        m_digest.update(m_buffer, m_bufferBytes, bytesRead);
                     }
+                    m_bufferBytes += bytesRead;
+                    m_position += bytesRead;
 
                     if (m_bufferBytes == BLOCK_SIZE) {
                         indicator = m_buffer[6] & 0xFF;
@@ -209,9 +220,26 @@ implements Runnable
                         }
                     }
                 } else {
-                    m_bufferBytes += m_inputStream.read(m_buffer, m_bufferBytes, recordLength - m_bufferBytes);
+                    bytesRead = m_inputStream.read(m_buffer, m_bufferBytes, recordLength - m_bufferBytes);
+                    if (bytesRead < 0) {
+                        logger.fine("SeedInputStream Thread> Stream ended within a record.");
+                        if (m_indicateLast) {
+                            m_queue.put(last);
+                        } else {
+                            m_queue.put(end);
+                        }
+                        m_running = false;
+                        continue;
+                    }
+                    if (m_digest != null) {
+                        m_digest.update(m_buffer, m_bufferBytes, bytesRead);
+                    }
+                    m_bufferBytes += bytesRead;
+                    m_position += bytesRead;
                     if (m_bufferBytes == recordLength) {
-                        m_queue.put(new ByteBlock(m_buffer, recordLength, m_skippedBytes));
+                        ByteBlock block = new ByteBlock(m_buffer, recordLength, m_skippedBytes);
+                        block.setLocation(m_fileIndex, m_position - recordLength);
+                        m_queue.put(block);
                         m_bufferBytes = 0;
                         m_skippedBytes = 0;
                     }
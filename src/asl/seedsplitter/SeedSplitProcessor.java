@@ -20,12 +20,10 @@ package asl.seedsplitter;
 
 import java.lang.InterruptedException;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.GregorianCalendar;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.TimeZone;
 import java.util.TreeSet;
@@ -34,7 +32,7 @@ import java.util.ArrayList;
 import seed.Blockette320;
 import seed.IllegalSeednameException;
 import seed.MiniSeed;
-import seed.SeedUtil;
+import seed.SteimDecoder;
 import seed.SteimException;
 
 import asl.concurrent.FallOffQueue;
@@ -58,7 +56,6 @@ implements Runnable
     private boolean m_running;
     private Hashtable<String,TreeSet<DataSet>> m_trees = null;
     private Hashtable<String,ArrayList<DataSet>> m_table = null;
-    private static TimeZone m_tz = TimeZone.getTimeZone("GMT");
 
 //MTH:
     private Hashtable<String,ArrayList<Integer>> m_qualityTable = null;
@@ -69,6 +66,17 @@ implements Runnable
     private Pattern m_patternLocation = null;
     private Pattern m_patternChannel  = null;
 
+    private boolean m_mergeTrees = true;
+    private boolean m_headerOnly = false;
+    private long m_endTime = Long.MAX_VALUE;
+    private RecordIndex m_recordIndex = null;
+    private boolean m_compressed = false;
+
+    // Each processor decodes with its own decoder so several may run at once
+    private SteimDecoder m_decoder = new SteimDecoder();
+    // ... and cracks the record headers with its own RecordHeader
+    private RecordHeader m_header = new RecordHeader();
+
     /**
      * Constructor.
      * 
@@ -167,6 +175,128 @@ implements Runnable
         return m_calTable;
     }
 
+    /**
+     * Returns the per-channel trees of DataSets built by this processor.
+     * Unless merging was disabled, these have already been merged into the
+     * hash table.
+     * 
+     * @return The per-channel trees of DataSets.
+     */
+    public Hashtable<String,TreeSet<DataSet>> getTrees() {
+        return m_trees;
+    }
+
+    /**
+     * Controls whether the trees are merged into the hash table when this
+     * processor has finished. Parallel splitting disables this so that the
+     * trees from every file can be combined before a single merge.
+     * 
+     * @param mergeTrees False if the trees should be left unmerged.
+     */
+    public void setMergeTrees(boolean mergeTrees) {
+        m_mergeTrees = mergeTrees;
+    }
+
+    /**
+     * Controls whether records are decompressed. In header-only mode the
+     * DataSets are built from each record's start time, sample rate and 
+     * sample count, without decoding the samples (see Sequence.extendEmpty()),
+     * while timing quality and calibration blockettes are still collected.
+     * 
+     * @param headerOnly True if only the record headers should be read.
+     */
+    public void setHeaderOnly(boolean headerOnly) {
+        m_headerOnly = headerOnly;
+    }
+
+    /**
+     * Controls whether the DataSets store their data points compressed
+     * (see Sequence.compress()). This has no effect in header-only mode.
+     * 
+     * @param compressed True if the data points should be compressed.
+     */
+    public void setCompressed(boolean compressed) {
+        m_compressed = compressed;
+    }
+
+    /**
+     * Discards records which start at or after the specified time before
+     * they are decompressed.
+     * 
+     * @param endTime Microseconds since the epoch.
+     */
+    public void setEndTime(long endTime) {
+        m_endTime = endTime;
+    }
+
+    /**
+     * Lists the location of every record which is split in the specified 
+     * index, so that its channel can be decoded later on. The records must 
+     * be tagged with their locations (see {@link ByteBlock#setLocation}).
+     * 
+     * @param recordIndex The index to which records are added, or null.
+     */
+    public void setRecordIndex(RecordIndex recordIndex) {
+        m_recordIndex = recordIndex;
+    }
+
+    public RecordIndex getRecordIndex() {
+        return m_recordIndex;
+    }
+
+    /**
+     * Merges each channel's ordered tree of DataSets into a list of 
+     * contiguous DataSets, which is stored in the table under the 
+     * channel's key.
+     * 
+     * @param trees The per-channel trees of DataSets to be merged.
+     * @param table The hash table into which the merged DataSets are placed.
+     */
+    static void mergeTrees(Hashtable<String,TreeSet<DataSet>> trees,
+                           Hashtable<String,ArrayList<DataSet>> table)
+    {
+        Iterator<DataSet> iter;
+        DataSet currDataSet;
+        DataSet lastDataSet;
+        TreeSet<DataSet> tree;
+        for (String chanKey: trees.keySet()) {
+            tree = trees.get(chanKey);
+            ArrayList<DataSet> list = new ArrayList<DataSet>(tree.size());
+            if (!tree.isEmpty()) {
+                logger.fine("Processing " +tree.size()+ " tree elements for '" +chanKey+ "'");
+                iter = tree.iterator();
+                currDataSet = null;
+                lastDataSet = (DataSet)iter.next();
+                while (iter.hasNext()) {
+                    currDataSet = (DataSet)iter.next();
+                    try {
+                        logger.finer("Merging DataSets...");
+                        currDataSet.mergeInto(lastDataSet);
+                        logger.finer("Done.");
+                    } catch (SequenceIntervalMismatchException e) {
+                        throw new RuntimeException("Interval Mismatch. This should never happen!");
+                    } catch (SequenceMergeRangeException e) {
+                        logger.finer("Failed.");
+                        list.add(lastDataSet);
+                        lastDataSet = currDataSet;
+                        currDataSet = null;
+                    } catch (SequenceTimingException e) {
+                        logger.finer("Timing Error. Sequences could not be correctly paired!");
+                        list.add(lastDataSet);
+                        currDataSet.trimStart(lastDataSet.getStartTime());
+                        lastDataSet = currDataSet;
+                        currDataSet = null;
+                        //throw new RuntimeException("Timing Error. These sequences cannot be correctly paired!");
+                    }
+                }
+                list.add(lastDataSet);
+                table.put(chanKey, list);
+            } else {
+                logger.fine("Empty tree for '" +chanKey+ "'");
+            }
+        }
+    }
+
     /**
      * Halts SeedSplitProcessor cleanly. 
      */
@@ -175,6 +305,13 @@ implements Runnable
         m_queue.offer(new ByteBlock(null, 0, true, true));
     }
 
+    /**
+     * @return true if there is no filter pattern or the value matches it.
+     */
+    private static boolean matches(Pattern pattern, String value) {
+        return (pattern == null) || pattern.matcher(value).matches();
+    }
+
     private volatile int lastSequenceNumber = 0;
     /**
      * Pulls {@link ByteBlock}s from the queue and converts the contained
@@ -193,31 +330,19 @@ implements Runnable
         double sampleRate = 0.0;
         long   interval = 0;
 
-        int[] ymd = null;
-        int year;
-        int month;
-        int day;
-        int doy;
-        int hour;
-        int minute;
-        int second;
-        int husec;
         long startTime = 0;
 
         byte[] recordBytes = null;
         int[] samples = null;
-        int[] timeComp = null;
-        GregorianCalendar cal = null;
-        String seedstring = null;
         // total number of bytes that have been received from the queue
         long byteTotal = 0;
         SeedSplitProgress progress = null;
         String key = null;
         TreeSet<DataSet> tree = null;
         Hashtable<String,DataSet> temps = new Hashtable<String,DataSet>();
-        Hashtable<String,Integer> recordCounts = new Hashtable<String,Integer>();
-
-        Matcher matcher = null;
+        Hashtable<String,int[]> recordCounts = new Hashtable<String,int[]>();
+        // Whether each channel key passes the network/station/location/channel filters
+        Hashtable<String,Boolean> accepted = new Hashtable<String,Boolean>();
 
         int kept = 0;
         int discarded = 0;
@@ -239,80 +364,53 @@ implements Runnable
                     } else if (MiniSeed.crackIsHeartBeat(recordBytes)) {
                         logger.finer("Found HEARTBEAT record!");
                     } else { //MTH
-                        seedstring = MiniSeed.crackSeedname(recordBytes);
-                        network = seedstring.substring(0,2).trim();
-                        if (m_patternNetwork != null) {
-                            matcher = m_patternNetwork.matcher(network);
-                            if (!matcher.matches()) {
-                                discarded++;
-                                break progress;
-                            }
+                        // The names, key + sample rate are the same objects for every record of a channel
+                        m_header.crack(recordBytes);
+                        network  = m_header.getNetwork();
+                        station  = m_header.getStation();
+                        location = m_header.getLocation();
+                        channel  = m_header.getChannel();
+                        key = m_header.getKey();
+                        Boolean keyAccepted = accepted.get(key);
+                        if (keyAccepted == null) {
+                            keyAccepted = matches(m_patternNetwork, network) && matches(m_patternStation, station) &&
+                                          matches(m_patternLocation, location) && matches(m_patternChannel, channel);
+                            accepted.put(key, keyAccepted);
                         }
-                        station = seedstring.substring(2,7).trim();
-                        if (m_patternStation != null) {
-                            matcher = m_patternStation.matcher(station);
-                            if (!matcher.matches()) {
-                                discarded++;
-                                break progress;
-                            }
-                        }
-                        location = seedstring.substring(10,12).trim();
-                    // MTH:
-                        if (location.equals("") || location == null) {
-                            location = "--";            // Set Default location to "--"
-                        }
-                        if (m_patternLocation != null) {
-                            matcher = m_patternLocation.matcher(location);
-                            if (!matcher.matches()) {
-                                discarded++;
-                                break progress;
-                            }
-                        }
-                        channel = seedstring.substring(7,10).trim();
-                        if (m_patternChannel != null) {
-                            matcher = m_patternChannel.matcher(channel);
-                            if (!matcher.matches()) {
-                                discarded++;
-                                break progress;
-                            }
+                        if (!keyAccepted) {
+                            discarded++;
+                            break progress;
                         }
-                        sampleRate = MiniSeed.crackRate(recordBytes);
+                        sampleRate = m_header.getSampleRate();
                         try {
                             interval = DataSet.sampleRateToInterval(sampleRate);
                         } catch (IllegalSampleRateException e) {
-                            MiniSeed ms = new MiniSeed(recordBytes);
-                            logger.finer(String.format("Illegal Sample Rate: sequence #%d, rate = %f", ms.getSequence(), sampleRate));
+                            logger.finer(String.format("Illegal Sample Rate: sequence #%d, rate = %f", m_header.getSequence(), sampleRate));
                             discarded++;
                             break progress;
                         }
                         kept++;
-                        logger.finer(String.format("%s_%s %s-%s", network, station, location, channel));
-                        key = String.format("%s_%s %s-%s (%.1f Hz)", network, station, location, channel, sampleRate);
+                        if (logger.isLoggable(Level.FINER)) {
+                            logger.finer(String.format("%s_%s %s-%s", network, station, location, channel));
+                        }
 
-                        if (!recordCounts.containsKey(key)) {
-                            recordCounts.put(key, 1);
-                        } else {
-                            recordCounts.put(key, recordCounts.get(key) + 1);
+                        int[] recordCount = recordCounts.get(key);
+                        if (recordCount == null) {
+                            recordCount = new int[1];
+                            recordCounts.put(key, recordCount);
                         }
+                        recordCount[0]++;
 
-                        TimeZone.setDefault(TimeZone.getTimeZone("GMT"));
-
-                        year   = MiniSeed.crackYear(recordBytes);
-                        doy    = MiniSeed.crackDOY(recordBytes);
-                        ymd    = SeedUtil.ymd_from_doy(year, doy);
-                        month  = ymd[1] - 1;
-                        day    = ymd[2];
-                        timeComp = MiniSeed.crackTime(recordBytes);
-                        hour   = timeComp[0];
-                        minute = timeComp[1];
-                        second = timeComp[2];
-                        husec  = timeComp[3];
-
-//System.out.format("== SeedSplitProcessor: key=%s [%d/%d/%d %2d:%2d:%2d]\n", key, year,month,day,hour,minute,second);
-                        cal = new GregorianCalendar(m_tz);
-                        cal.set(year, month, day, hour, minute, second);
-                        cal.setTimeInMillis((cal.getTimeInMillis() / 1000L * 1000L) + (husec / 10));
-                        startTime = (cal.getTimeInMillis() * 1000) + (husec % 10) * 100; 
+                        startTime = m_header.getStartTime();
+                        if (startTime >= m_endTime) {
+                            kept--;
+                            discarded++;
+                            break progress;
+                        }
+                        if (m_recordIndex != null) {
+                            m_recordIndex.add(key, block.getFileIndex(), block.getOffset(), block.getLength(),
+                                              startTime, m_header.getNsamp());
+                        }
 
                         if (!temps.containsKey(key)) {
                             tempData = null;
@@ -344,7 +442,6 @@ implements Runnable
                         // (VIM-HACK) }
                             replaceDataSet = true;
                         } else {
-                            MiniSeed ms = new MiniSeed(recordBytes);
                             if ((startTime - tempData.getEndTime()) < (interval - intervalAdjustment)) {
                             //if ((startTime - tempData.getEndTime()) < interval) {
                             // (VIM-HACK) }
@@ -352,9 +449,9 @@ implements Runnable
                                 logger.finer(String.format("Found data overlap <%s] - [%s> sequence #%d.!\n",
                                                  DataSet.timestampToString(tempData.getEndTime()),
                                                  DataSet.timestampToString(startTime),
-                                                 ms.getSequence()));
-                                if (ms.getSequence() <= lastSequenceNumber) {
-                                    logger.finer(String.format("Out of sequence last=%d current=%d", lastSequenceNumber, ms.getSequence()));
+                                                 m_header.getSequence()));
+                                if (m_header.getSequence() <= lastSequenceNumber) {
+                                    logger.finer(String.format("Out of sequence last=%d current=%d", lastSequenceNumber, m_header.getSequence()));
                                 }
                                 //throw new SeedRecordOverlapException();
                             }
@@ -378,34 +475,44 @@ implements Runnable
                             tempData.setLocation(location);
                             tempData.setChannel(channel);
                             tempData.setStartTime(startTime);
+                            if (m_compressed && !m_headerOnly) {
+                                tempData.compress();
+                            }
                             try {
                                 tempData.setSampleRate(sampleRate);
                             } catch (RuntimeException e) {
-                                MiniSeed ms = new MiniSeed(recordBytes);
-                                logger.finer(String.format("Invalid Start Time: sequence #%d", ms.getSequence()));
+                                logger.finer(String.format("Invalid Start Time: sequence #%d", m_header.getSequence()));
                                 tempData = null;
                                 break progress;
                             } catch (IllegalSampleRateException e) {
-                                MiniSeed ms = new MiniSeed(recordBytes);
-                                logger.finer(String.format("Invalid Sample Rate: sequence #%d, rate = %f", ms.getSequence(), ms.getRate()));
+                                logger.finer(String.format("Invalid Sample Rate: sequence #%d, rate = %f", m_header.getSequence(), sampleRate));
                                 tempData = null;
                                 break progress;
                             }
                             temps.put(key, tempData);
                         } // replaceDataSet
 
+                        // The one MiniSeed made for the record
                         record = new MiniSeed(recordBytes);
-                        samples = record.decomp();
+                        if (m_headerOnly) {
+                            samples = null;
+                        } else {
+                            samples = record.decomp(m_decoder);
+                        }
 
                     // MTH: decomp() will return null in the event of Steim2 Exception, etc.
-                        if (samples == null) {
+                        if ((samples == null) && !m_headerOnly) {
                             logger.severe("SeedSplitProcessor: Caught SteimException --> Skip this block");
                         }
                         else {  // samples != null
 
                         // blockettes = record.getBlockettes();
-                        lastSequenceNumber = record.getSequence();
-                        tempData.extend(samples, 0, samples.length);
+                        lastSequenceNumber = m_header.getSequence();
+                        if (m_headerOnly) {
+                            tempData.extendEmpty(m_header.getNsamp());
+                        } else {
+                            tempData.extend(samples, 0, samples.length);
+                        }
 
                     // MTH: Get timing quality from the current miniseed block and store it for this key
                         int quality = record.getTimingQuality();
@@ -514,50 +621,14 @@ implements Runnable
         }
         //*/
 
-        Iterator<DataSet> iter;
-        DataSet currDataSet;
-        DataSet lastDataSet;
-        for (String chanKey: m_trees.keySet()) {
-            tree = m_trees.get(chanKey);
-            ArrayList<DataSet> list = new ArrayList<DataSet>(tree.size());
-            if (!tree.isEmpty()) {
-                logger.fine("Processing " +tree.size()+ " tree elements for '" +chanKey+ "'");
-                iter = tree.iterator();
-                currDataSet = null;
-                lastDataSet = (DataSet)iter.next();
-                while (iter.hasNext()) {
-                    currDataSet = (DataSet)iter.next();
-                    try {
-                        logger.finer("Merging DataSets...");
-                        currDataSet.mergeInto(lastDataSet);
-                        logger.finer("Done.");
-                    } catch (SequenceIntervalMismatchException e) {
-                        throw new RuntimeException("Interval Mismatch. This should never happen!");
-                    } catch (SequenceMergeRangeException e) {
-                        logger.finer("Failed.");
-                        list.add(lastDataSet);
-                        lastDataSet = currDataSet;
-                        currDataSet = null;
-                    } catch (SequenceTimingException e) {
-                        logger.finer("Timing Error. Sequences could not be correctly paired!");
-                        list.add(lastDataSet);
-                        currDataSet.trimStart(lastDataSet.getStartTime());
-                        lastDataSet = currDataSet;
-                        currDataSet = null;
-                        //throw new RuntimeException("Timing Error. These sequences cannot be correctly paired!");
-                    }
-                }
-                list.add(lastDataSet);
-                m_table.put(chanKey, list);
-            } else {
-                logger.fine("Empty tree for '" +chanKey+ "'");
-            }
+        if (m_mergeTrees) {
+            mergeTrees(m_trees, m_table);
         }
         logger.fine("SeedSplitProcessor Thread> Yeah, we're done.");
         logger.fine("Kept " +kept+ " records");
         logger.fine("Discarded " +discarded+ " records");
         for (String countKey: recordCounts.keySet()) {
-            logger.finer("  " +countKey+ ": " +recordCounts.get(key)+ " records");
+            logger.finer("  " +countKey+ ": " +recordCounts.get(countKey)[0]+ " records");
         }
         if ((progress != null) && !progress.errorOccurred()) {
             progress = new SeedSplitProgress(byteTotal, true);
@@ -23,10 +23,17 @@ import java.io.FileInputStream;
 import java.io.BufferedInputStream;
 import java.io.FileNotFoundException;
 import java.io.File;
+import java.io.IOException;
 import java.lang.Thread;
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.Hashtable;
+import java.util.TreeSet;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -61,6 +68,9 @@ extends SwingWorker<Hashtable<String,ArrayList<DataSet>>, SeedSplitProgress>
     // along the lines of (file # out of total, byte count out of total, percent complete)
     private File[] m_files;
     private String[] m_digests;
+    // Each file's size and modification time, taken before it is opened
+    private long[] m_fileSizes;
+    private long[] m_modifiedTimes;
     private Hashtable<String,ArrayList<DataSet>> m_table;
     private LinkedBlockingQueue<ByteBlock> m_recordQueue;
     private LinkedBlockingQueue<DataSet>   m_dataQueue;
@@ -73,6 +83,13 @@ extends SwingWorker<Hashtable<String,ArrayList<DataSet>>, SeedSplitProgress>
     private Pattern m_patternLocation = null;
     private Pattern m_patternChannel  = null;
 
+    private int m_threads = 1;
+    private boolean m_headerOnly = false;
+    private boolean m_indexOnly = false;
+    private boolean m_compressed = false;
+    private long m_endTime = Long.MAX_VALUE;
+    private RecordIndex m_recordIndex = null;
+
 //MTH
     private Hashtable<String,ArrayList<Integer>> m_qualityTable;
     private Hashtable<String,ArrayList<Blockette320>> m_calTable;
@@ -97,6 +114,8 @@ extends SwingWorker<Hashtable<String,ArrayList<DataSet>>, SeedSplitProgress>
         // or increase the size if the GUI is jerky.
         m_progressQueue = new FallOffQueue<SeedSplitProgress>(1);
         m_digests = new String[m_files.length];
+        m_fileSizes = new long[m_files.length];
+        m_modifiedTimes = new long[m_files.length];
     }
 
     /**
@@ -123,7 +142,9 @@ extends SwingWorker<Hashtable<String,ArrayList<DataSet>>, SeedSplitProgress>
 
     /**
      * Sets a filter which determines whether a MiniSEED record should be 
-     * passed on to the SeedSplitProcessor.
+     * passed on to the SeedSplitProcessor. The filter may list several 
+     * comma separated alternatives (e.g., "LH*,VM*"), and may be applied
+     * to several properties at once (e.g., LOCATION | CHANNEL).
      * 
      * @param filter 	Filter pattern to be used for this property.
      * @param which		Property to which this filter pattern should be applied.
@@ -133,7 +154,7 @@ extends SwingWorker<Hashtable<String,ArrayList<DataSet>>, SeedSplitProgress>
         throws InvalidFilterException
     {
         Pattern pattern;
-        Pattern pVerify = Pattern.compile("^[A-Za-z0-9*?.]+$");
+        Pattern pVerify = Pattern.compile("^[A-Za-z0-9*?.-]+(,[A-Za-z0-9*?.-]+)*$");
         Matcher mVerify = pVerify.matcher(filter);
         if (!mVerify.matches()) {
             throw new InvalidFilterException("Invalid filter text: '" +filter+ "' ");
@@ -141,6 +162,7 @@ extends SwingWorker<Hashtable<String,ArrayList<DataSet>>, SeedSplitProgress>
 
         String pText = filter.replaceAll("[*]",".*");
         pText = pText.replaceAll("[?]",".?");
+        pText = "(?:" + pText.replaceAll(",", "|") + ")";
 
         try {
             pattern = Pattern.compile(pText); 
@@ -151,18 +173,120 @@ extends SwingWorker<Hashtable<String,ArrayList<DataSet>>, SeedSplitProgress>
         if ((which & NETWORK) > 0) {
             m_patternNetwork = pattern;
         } 
-        else if ((which & STATION) > 0) {
+        if ((which & STATION) > 0) {
             m_patternStation = pattern;
         } 
-        else if ((which & LOCATION) > 0) {
+        if ((which & LOCATION) > 0) {
             m_patternLocation = pattern;
         } 
-        else if ((which & CHANNEL) > 0) {
+        if ((which & CHANNEL) > 0) {
             m_patternChannel = pattern;
         }
 
     }
 
+    /**
+     * Sets the number of files which may be decoded concurrently. With more
+     * than one thread each file is split by its own SeedSplitProcessor, and
+     * the per-channel DataSet trees of all files are merged once every file
+     * has been read. The results are the same as those of the serial path.
+     * 
+     * @param threads	The maximum number of files to decode at once (1 = serial).
+     */
+    public void setThreads(int threads)
+    {
+        m_threads = threads;
+    }
+
+    public int getThreads()
+    {
+        return m_threads;
+    }
+
+    /**
+     * Selects header-only splitting, in which records are not decompressed.
+     * The resulting DataSets cover the same time ranges, but only hold 
+     * their data point counts (see {@link Sequence#extendEmpty(int)}).
+     * The quality and calibration tables are unaffected.
+     * 
+     * @param headerOnly	True to read only the record headers.
+     */
+    public void setHeaderOnly(boolean headerOnly)
+    {
+        m_headerOnly = headerOnly;
+    }
+
+    public boolean isHeaderOnly()
+    {
+        return m_headerOnly;
+    }
+
+    /**
+     * Selects compressed storage for the DataSets' data points (see 
+     * {@link Sequence#compress()}), which typically takes a third to a 
+     * half of the memory. This also applies to the channels decoded from
+     * the record index of an index-only split.
+     * 
+     * @param compressed	True to compress the data points.
+     */
+    public void setCompressed(boolean compressed)
+    {
+        m_compressed = compressed;
+    }
+
+    public boolean isCompressed()
+    {
+        return m_compressed;
+    }
+
+    /**
+     * Selects index-only splitting, in which records are not decompressed 
+     * but their locations are listed in a {@link RecordIndex} (see 
+     * getRecordIndex()), from which each channel can be decoded when it is 
+     * first needed. The table then holds the header-only DataSets of every
+     * channel (see setHeaderOnly()). The quality and calibration tables 
+     * are unaffected.
+     * 
+     * @param indexOnly	True to index the records rather than decode them.
+     */
+    public void setIndexOnly(boolean indexOnly)
+    {
+        m_indexOnly = indexOnly;
+    }
+
+    public boolean isIndexOnly()
+    {
+        return m_indexOnly;
+    }
+
+    /**
+     * Returns the index of the records split by an index-only split.
+     * 
+     * @return The record index, or null if the split was not index-only.
+     */
+    public RecordIndex getRecordIndex()
+    {
+        return m_recordIndex;
+    }
+
+    /**
+     * Skips every record which starts at or after the specified time, 
+     * without decompressing it. This serves callers which only need the
+     * beginning of a day (e.g., the head of the next day for windows which
+     * cross midnight). The file digests still cover the whole of each file.
+     * 
+     * @param endTime	Microseconds since the epoch (default: no limit).
+     */
+    public void setEndTime(long endTime)
+    {
+        m_endTime = endTime;
+    }
+
+    public long getEndTime()
+    {
+        return m_endTime;
+    }
+
     /**
      * Get the results after the SeedSplitter has finished processing all files.
      * 
@@ -173,6 +297,11 @@ extends SwingWorker<Hashtable<String,ArrayList<DataSet>>, SeedSplitProgress>
         return m_table;
     }
 
+    public File[] getFiles()
+    {
+        return m_files;
+    }
+
     public Hashtable<String,ArrayList<Integer>> getQualityTable()
     {
         return m_qualityTable;
@@ -202,6 +331,29 @@ extends SwingWorker<Hashtable<String,ArrayList<DataSet>>, SeedSplitProgress>
         return m_digests;
     }
 
+    /**
+     * Returns the size of each file, as it was just before the file was 
+     * read. A digest only describes a file of this size (and modification 
+     * time); a file which grew while it was read no longer matches.
+     * 
+     * @return An array of file sizes in bytes.
+     */
+    public long[] getFileSizes()
+    {
+        return m_fileSizes;
+    }
+
+    /**
+     * Returns the modification time of each file, as it was just before 
+     * the file was read (see {@link #getFileSizes()}).
+     * 
+     * @return An array of modification times in milliseconds since the epoch.
+     */
+    public long[] getModifiedTimes()
+    {
+        return m_modifiedTimes;
+    }
+
     /**
      * Overrides the doInBackground method of SwingWorker, launching and 
      * monitoring two threads which read the files and process MiniSEED Data.
@@ -211,6 +363,10 @@ extends SwingWorker<Hashtable<String,ArrayList<DataSet>>, SeedSplitProgress>
     @Override
     public Hashtable<String,ArrayList<DataSet>> doInBackground()
     {
+        if ((m_threads > 1) && (m_files.length > 1)) {
+            return doInParallel();
+        }
+
         SeedSplitProgress progress = null;
         int progressPercent = 0; // 0 - 100
         int lastPercent = 0;
@@ -227,6 +383,15 @@ extends SwingWorker<Hashtable<String,ArrayList<DataSet>>, SeedSplitProgress>
         processor.setStationPattern(m_patternStation);
         processor.setLocationPattern(m_patternLocation);
         processor.setChannelPattern(m_patternChannel);
+        processor.setHeaderOnly(m_headerOnly || m_indexOnly);
+        processor.setCompressed(m_compressed);
+        processor.setEndTime(m_endTime);
+        m_recordIndex = null;
+        if (m_indexOnly) {
+            m_recordIndex = new RecordIndex(m_files);
+            m_recordIndex.setCompressed(m_compressed);
+            processor.setRecordIndex(m_recordIndex);
+        }
         Thread processorThread = new Thread(processor);
         processorThread.start();
         for (int i = 0; i < m_files.length; i++) {
@@ -243,8 +408,11 @@ extends SwingWorker<Hashtable<String,ArrayList<DataSet>>, SeedSplitProgress>
             Thread inputThread = null;
             progressBytes = 0;
             try {
+                m_fileSizes[i] = file.length();
+                m_modifiedTimes[i] = file.lastModified();
                 inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
                 SeedInputStream stream = new SeedInputStream(inputStream, m_recordQueue, finalFile); 
+                stream.setFileIndex(i);
                 inputThread = new Thread(stream);
                 logger.fine("Processing file " + file.getName() + "...");
                 inputThread.start();
@@ -309,9 +477,177 @@ extends SwingWorker<Hashtable<String,ArrayList<DataSet>>, SeedSplitProgress>
             logger.fine("Finished processing file " + file.getName() + "  " + progressPercent + "% complete");
             stageBytes += file.length();
         }
+        if ((m_recordIndex != null) && (m_table != null)) {
+            m_recordIndex.retainKeys(m_table.keySet());
+        }
         logger.finer("All done. Setting progress to 100%");
         this.setProgress(100);
         return m_table;
     }
-}
 
+    /**
+     * Splits the files using a pool of threads, each file being read and
+     * processed independently. The trees from every file are then combined
+     * in file order and merged, and the quality and calibration records
+     * are concatenated in file order, so the results are identical to 
+     * those of the serial path.
+     * 
+     * @return  A hash table containing all of the data acquired from the file list.
+     */
+    private Hashtable<String,ArrayList<DataSet>> doInParallel()
+    {
+        long totalBytes = 0;
+        long doneBytes = 0;
+        for (File file: m_files) {
+            totalBytes += file.length();
+        }
+
+        int threads = Math.min(m_threads, m_files.length);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayList<Future<SeedSplitProcessor>> futures = new ArrayList<Future<SeedSplitProcessor>>(m_files.length);
+        for (int i = 0; i < m_files.length; i++) {
+            final int index = i;
+            futures.add(pool.submit(new Callable<SeedSplitProcessor>() {
+                public SeedSplitProcessor call() throws Exception {
+                    return splitFile(index);
+                }
+            }));
+        }
+        pool.shutdown();
+
+        Hashtable<String,TreeSet<DataSet>> trees = new Hashtable<String,TreeSet<DataSet>>();
+        m_qualityTable = null;
+        m_calTable = null;
+        m_recordIndex = null;
+        if (m_indexOnly) {
+            m_recordIndex = new RecordIndex(m_files);
+            m_recordIndex.setCompressed(m_compressed);
+        }
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                SeedSplitProcessor processor = futures.get(i).get();
+                if (this.isCancelled()) {
+                    pool.shutdownNow();
+                    m_table = null;
+                    return null;
+                }
+                doneBytes += m_files[i].length();
+                if (processor == null) {
+                    continue;
+                }
+
+                for (String key: processor.getTrees().keySet()) {
+                    TreeSet<DataSet> tree = trees.get(key);
+                    if (tree == null) {
+                        tree = new TreeSet<DataSet>(new SequenceComparator());
+                        trees.put(key, tree);
+                    }
+                    tree.addAll(processor.getTrees().get(key));
+                }
+                if (m_recordIndex != null) {
+                    m_recordIndex.append(processor.getRecordIndex());
+                }
+
+                Hashtable<String,ArrayList<Integer>> qualityTable = processor.getQualityTable();
+                if (qualityTable != null) {
+                    if (m_qualityTable == null) {
+                        m_qualityTable = new Hashtable<String,ArrayList<Integer>>();
+                    }
+                    for (String key: qualityTable.keySet()) {
+                        if (m_qualityTable.get(key) == null) {
+                            m_qualityTable.put(key, new ArrayList<Integer>());
+                        }
+                        m_qualityTable.get(key).addAll(qualityTable.get(key));
+                    }
+                }
+
+                Hashtable<String,ArrayList<Blockette320>> calTable = processor.getCalTable();
+                if (calTable != null) {
+                    if (m_calTable == null) {
+                        m_calTable = new Hashtable<String,ArrayList<Blockette320>>();
+                    }
+                    for (String key: calTable.keySet()) {
+                        if (m_calTable.get(key) == null) {
+                            m_calTable.put(key, new ArrayList<Blockette320>());
+                        }
+                        m_calTable.get(key).addAll(calTable.get(key));
+                    }
+                }
+
+                int progressPercent = (int)(doneBytes * 100L / Math.max(totalBytes, 1L));
+                this.setProgress((progressPercent > 99) ? 99 : progressPercent);
+                logger.fine("Finished processing file " + m_files[i].getName() + "  " + progressPercent + "% complete");
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            m_table = null;
+            return null;
+        } catch (ExecutionException e) {
+            pool.shutdownNow();
+            throw new RuntimeException("SeedSplitter: error while splitting files", e.getCause());
+        }
+
+        m_table = new Hashtable<String,ArrayList<DataSet>>();
+        SeedSplitProcessor.mergeTrees(trees, m_table);
+        if (m_recordIndex != null) {
+            m_recordIndex.retainKeys(m_table.keySet());
+        }
+        m_lastProgress = new SeedSplitProgress(totalBytes, true);
+        logger.finer("All done. Setting progress to 100%");
+        this.setProgress(100);
+        return m_table;
+    }
+
+    /**
+     * Reads and processes a single file on the calling thread, leaving the 
+     * per-channel trees unmerged.
+     * 
+     * @param index	Index of the file in the file list.
+     * @return The processor holding the file's trees, or null if the file could not be opened.
+     */
+    private SeedSplitProcessor splitFile(int index)
+    throws InterruptedException
+    {
+        File file = m_files[index];
+        DataInputStream inputStream = null;
+        m_fileSizes[index] = file.length();
+        m_modifiedTimes[index] = file.lastModified();
+        try {
+            inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        } catch (FileNotFoundException e) {
+            logger.fine("File '" +file.getName()+ "' not found\n");
+            return null;
+        }
+
+        LinkedBlockingQueue<ByteBlock> queue = new LinkedBlockingQueue<ByteBlock>(1024);
+        SeedSplitProcessor processor = new SeedSplitProcessor(queue, new FallOffQueue<SeedSplitProgress>(1));
+        processor.setNetworkPattern(m_patternNetwork);
+        processor.setStationPattern(m_patternStation);
+        processor.setLocationPattern(m_patternLocation);
+        processor.setChannelPattern(m_patternChannel);
+        processor.setHeaderOnly(m_headerOnly || m_indexOnly);
+        processor.setCompressed(m_compressed);
+        processor.setEndTime(m_endTime);
+        processor.setMergeTrees(false);
+        if (m_indexOnly) {
+            processor.setRecordIndex(new RecordIndex(m_files));
+        }
+
+        SeedInputStream stream = new SeedInputStream(inputStream, queue, true);
+        stream.setFileIndex(index);
+        Thread inputThread = new Thread(stream);
+        logger.fine("Processing file " + file.getName() + "...");
+        try {
+            inputThread.start();
+            // Returns once the stream has queued its last block
+            processor.run();
+            inputThread.join();
+        } finally {
+            try {
+                inputStream.close();
+            } catch (IOException e) {;}
+        }
+        m_digests[index] = stream.getDigestString();
+        return processor;
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright 2012, United States Geological Survey or
+ * third-party contributors as indicated by the @author tags.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/  >.
+ *
+ */
+package asl.seedsplitter;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.Random;
+
+import seed.Blockette320;
+import seed.MiniSeedOutputHandler;
+import seed.RawToMiniSeed;
+
+/**
+ * Compares the throughput of the serial and parallel SeedSplitter paths on
+ * a synthetic station-day, and verifies that every path produces the same data,
+ * quality and calibration tables. A header-only split is also timed, and
+ * must produce the same coverage (DataSet ranges and lengths), as is an 
+ * index-only split, whose channels must decode to the same data, and a 
+ * split which keeps its data compressed in memory.
+ *
+ * usage: SeedSplitterBenchmark [threads] [directory]
+ *
+ * The station-day is written as one 512-byte record file per channel, with
+ * the broadband channels split across two files at noon so that contiguous
+ * data must be merged across files.
+ */
+public class SeedSplitterBenchmark
+{
+    private static final int YEAR = 2012;
+    private static final int DOY  = 100;
+
+    private static final String[] LOCATIONS = {"00", "10"};
+    private static final String[] CHANNELS  = {"BHZ", "BH1", "BH2", "LHZ", "LH1", "LH2", "VMZ"};
+    private static final double[] RATES     = {40.0, 40.0, 40.0, 1.0, 1.0, 1.0, 0.1};
+
+    public static void main(String args[])
+    throws Exception
+    {
+        int threads = (args.length > 0) ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        File dir = (args.length > 1) ? new File(args[1]) : new File(System.getProperty("java.io.tmpdir"), "seedsplitter-benchmark");
+        dir.mkdirs();
+
+        File[] files = writeStationDay(dir);
+        long totalBytes = 0;
+        for (File file: files) {
+            totalBytes += file.length();
+        }
+        System.out.format("== SeedSplitterBenchmark: %d files, %.1f MB in %s\n", files.length, totalBytes / 1048576.0, dir);
+
+        // Warm up the JIT on every path before timing them
+        split(files, 1);
+        split(files, threads);
+        split(files, 1, true);
+
+        SeedSplitter serial = run("serial", files, 1, totalBytes);
+        boolean identical = true;
+        String label = String.format("parallel (%d thr)", threads);
+        SeedSplitter parallel = run(label, files, threads, totalBytes);
+        String error = compare(serial, parallel, true);
+        if (error != null) {
+            System.out.format("== SeedSplitterBenchmark: MISMATCH (%s): %s\n", label, error);
+            identical = false;
+        }
+
+        long start = System.nanoTime();
+        SeedSplitter headers = split(files, 1, true);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.format("==   %-28s: %6.3f sec  %7.1f MB/s\n", "serial, header-only", seconds, totalBytes / 1048576.0 / seconds);
+        error = compare(serial, headers, false);
+        if (error != null) {
+            System.out.format("== SeedSplitterBenchmark: MISMATCH (header-only): %s\n", error);
+            identical = false;
+        }
+
+        start = System.nanoTime();
+        SeedSplitter indexed = split(files, 1, false, true);
+        seconds = (System.nanoTime() - start) / 1e9;
+        System.out.format("==   %-28s: %6.3f sec  %7.1f MB/s\n", "serial, index-only", seconds, totalBytes / 1048576.0 / seconds);
+        error = compare(serial, indexed, false);
+        if (error == null) {
+            // Replace the header-only DataSets with the decoded channels
+            RecordIndex index = indexed.getRecordIndex();
+            for (String key: index.getKeys()) {
+                indexed.getTable().put(key, index.getChannelData(key));
+            }
+            error = compare(serial, indexed, true);
+        }
+        if (error != null) {
+            System.out.format("== SeedSplitterBenchmark: MISMATCH (index-only): %s\n", error);
+            identical = false;
+        }
+
+        start = System.nanoTime();
+        SeedSplitter compressed = split(files, 1, false, false, true);
+        seconds = (System.nanoTime() - start) / 1e9;
+        System.out.format("==   %-28s: %6.3f sec  %7.1f MB/s  %.1f -> %.1f MB in memory\n", "serial, compressed", seconds, totalBytes / 1048576.0 / seconds,
+                          storageSize(serial) / 1048576.0, storageSize(compressed) / 1048576.0);
+        error = compare(serial, compressed, true);
+        if (error != null) {
+            System.out.format("== SeedSplitterBenchmark: MISMATCH (compressed): %s\n", error);
+            identical = false;
+        }
+        if (!identical) {
+            System.exit(1);
+        }
+        System.out.format("== SeedSplitterBenchmark: all results are identical\n");
+    }
+
+    private static SeedSplitter run(String label, File[] files, int threads, long totalBytes)
+    {
+        long start = System.nanoTime();
+        SeedSplitter splitter = split(files, threads);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.format("==   %-28s: %6.3f sec  %7.1f MB/s\n", label, seconds, totalBytes / 1048576.0 / seconds);
+        return splitter;
+    }
+
+    private static SeedSplitter split(File[] files, int threads)
+    {
+        return split(files, threads, false);
+    }
+
+    private static SeedSplitter split(File[] files, int threads, boolean headerOnly)
+    {
+        return split(files, threads, headerOnly, false);
+    }
+
+    private static SeedSplitter split(File[] files, int threads, boolean headerOnly, boolean indexOnly)
+    {
+        return split(files, threads, headerOnly, indexOnly, false);
+    }
+
+    private static SeedSplitter split(File[] files, int threads, boolean headerOnly, boolean indexOnly, boolean compressed)
+    {
+        SeedSplitter splitter = new SeedSplitter(files);
+        splitter.setThreads(threads);
+        splitter.setHeaderOnly(headerOnly);
+        splitter.setIndexOnly(indexOnly);
+        splitter.setCompressed(compressed);
+        splitter.doInBackground();
+        return splitter;
+    }
+
+    /**
+     * @return The number of bytes holding the data of every DataSet in the splitter's table.
+     */
+    private static long storageSize(SeedSplitter splitter)
+    {
+        long size = 0;
+        for (ArrayList<DataSet> list: splitter.getTable().values()) {
+            for (DataSet dataSet: list) {
+                size += dataSet.getStorageSize();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Writes a synthetic day of random-walk data for every location/channel.
+     */
+    private static File[] writeStationDay(File dir)
+    throws IOException
+    {
+        ArrayList<File> files = new ArrayList<File>();
+        Random random = new Random(20120409L);
+        for (String location: LOCATIONS) {
+            for (int i = 0; i < CHANNELS.length; i++) {
+                String channel = CHANNELS[i];
+                double rate = RATES[i];
+                int nsamp = (int)(86400 * rate);
+                int[] samples = new int[nsamp];
+                int value = 0;
+                for (int j = 0; j < nsamp; j++) {
+                    value += random.nextInt(2001) - 1000;
+                    samples[j] = value;
+                }
+                String seedname = "IUANMO " + channel + location;
+                if (channel.startsWith("B")) {
+                    files.add(writeChannel(new File(dir, location + "_" + channel + ".0.512.seed"), seedname, rate, samples, 0, nsamp / 2));
+                    files.add(writeChannel(new File(dir, location + "_" + channel + ".1.512.seed"), seedname, rate, samples, nsamp / 2, nsamp - nsamp / 2));
+                }
+                else {
+                    files.add(writeChannel(new File(dir, location + "_" + channel + ".512.seed"), seedname, rate, samples, 0, nsamp));
+                }
+            }
+        }
+        return files.toArray(new File[0]);
+    }
+
+    private static File writeChannel(File file, String seedname, double rate, int[] samples, int offset, int count)
+    throws IOException
+    {
+        final BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        long startMicros = (long)(offset / rate * 1000000.0);
+        RawToMiniSeed rtms = new RawToMiniSeed(seedname, rate, 7, YEAR, DOY,
+                                               (int)(startMicros / 1000000L), (int)(startMicros % 1000000L), 0);
+        rtms.setOutputHandler(new MiniSeedOutputHandler() {
+            public void putbuf(byte[] b, int size) {
+                try {
+                    out.write(b, 0, size);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            public void close() {;}
+        });
+
+        int chunk = Math.max(1, (int)rate * 10);
+        for (int i = 0; i < count; i += chunk) {
+            int n = Math.min(chunk, count - i);
+            long micros = (long)((offset + i) / rate * 1000000.0);
+            rtms.process(Arrays.copyOfRange(samples, offset + i, offset + i + n), n, YEAR, DOY,
+                         (int)(micros / 1000000L), (int)(micros % 1000000L), 0, 0, 0, 100, 0, false);
+        }
+        rtms.forceOut();
+        out.close();
+        return file;
+    }
+
+    /**
+     * @param compareSamples	False to compare only the DataSet ranges and lengths.
+     * @return A description of the first difference found, or null if the results match.
+     */
+    private static String compare(SeedSplitter a, SeedSplitter b, boolean compareSamples)
+    {
+        Hashtable<String,ArrayList<DataSet>> tableA = a.getTable();
+        Hashtable<String,ArrayList<DataSet>> tableB = b.getTable();
+        if (!tableA.keySet().equals(tableB.keySet())) {
+            return "channel keys " + tableA.keySet() + " != " + tableB.keySet();
+        }
+        for (String key: tableA.keySet()) {
+            ArrayList<DataSet> listA = tableA.get(key);
+            ArrayList<DataSet> listB = tableB.get(key);
+            if (listA.size() != listB.size()) {
+                return key + ": " + listA.size() + " != " + listB.size() + " DataSets";
+            }
+            for (int i = 0; i < listA.size(); i++) {
+                DataSet dsA = listA.get(i);
+                DataSet dsB = listB.get(i);
+                if ((dsA.getStartTime() != dsB.getStartTime()) ||
+                    (dsA.getLength() != dsB.getLength()) ||
+                    (dsA.getInterval() != dsB.getInterval())) {
+                    return key + ": DataSet " + i + " start/length/interval differ";
+                }
+                if (compareSamples && !Arrays.equals(dsA.getSeries(), dsB.getSeries())) {
+                    return key + ": DataSet " + i + " samples differ";
+                }
+            }
+        }
+
+        Hashtable<String,ArrayList<Integer>> qualityA = a.getQualityTable();
+        Hashtable<String,ArrayList<Integer>> qualityB = b.getQualityTable();
+        if ((qualityA == null) ? (qualityB != null) : !qualityA.equals(qualityB)) {
+            return "quality tables differ";
+        }
+
+        Hashtable<String,ArrayList<Blockette320>> calA = a.getCalTable();
+        Hashtable<String,ArrayList<Blockette320>> calB = b.getCalTable();
+        if ((calA == null) != (calB == null)) {
+            return "calibration tables differ";
+        }
+        if (calA != null) {
+            if (!calA.keySet().equals(calB.keySet())) {
+                return "calibration table keys differ";
+            }
+            for (String key: calA.keySet()) {
+                if (calA.get(key).size() != calB.get(key).size()) {
+                    return key + ": calibration blockette counts differ";
+                }
+            }
+        }
+        return null;
+    }
+}
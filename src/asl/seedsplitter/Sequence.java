@@ -45,6 +45,11 @@ extends MemberDigest
     private int[] m_block = null;
     private int m_length = 0;
     private int m_remainder = 0;
+    // Only the number of data points is kept, not their values (see extendEmpty())
+    private boolean m_countOnly = false;
+    // Full blocks are compressed, ahead of the block being filled (see compress())
+    private boolean m_compressed = false;
+    private ArrayList<CompressedBlock> m_chunks = null;
 
     private long m_startTime = 0; // Microseconds since the epoch
     private double m_sampleRate = 0.0;
@@ -57,10 +62,15 @@ extends MemberDigest
         sequence.m_startTime  = m_startTime;
         sequence.m_sampleRate = m_sampleRate;
         sequence.m_interval   = m_interval;
-        for (int[] block: m_blocks) {
-            sequence.extend(block, 0, block.length); }
-        sequence.m_length     = m_length;
-        sequence.m_remainder  = m_remainder;
+        sequence.m_countOnly  = m_countOnly;
+        if (m_countOnly) {
+            sequence.m_length = m_length;
+            return sequence;
+        }
+        if (m_compressed) {
+            sequence.compress();
+        }
+        this._appendTo(sequence);
         return sequence;
     }
 
@@ -80,8 +90,10 @@ extends MemberDigest
      */
     private void _reset() 
     {
+        markDigestDirty();
         m_length = 0;
         m_blocks = new ArrayList<int[]>(8);
+        m_chunks = m_compressed ? new ArrayList<CompressedBlock>() : null;
         this._addBlock();
     }
 
@@ -95,6 +107,50 @@ extends MemberDigest
         m_remainder = BLOCK_SIZE;
     }
 
+    /**
+     * Compresses the current (full) block, which is then refilled.
+     */
+    private void _compressBlock() 
+    {
+        m_chunks.add(new CompressedBlock(m_block, 0, BLOCK_SIZE));
+        m_remainder = BLOCK_SIZE;
+    }
+
+    /**
+     * Returns the number of compressed blocks, which precede the uncompressed ones.
+     */
+    private int _getChunkCount() 
+    {
+        return (m_chunks == null) ? 0 : m_chunks.size();
+    }
+
+    /**
+     * Returns the block at the specified index: the block itself if it is
+     * not compressed, otherwise the buffer into which it is decompressed.
+     */
+    private int[] _getBlockData(int index, int[] buffer) 
+    {
+        int chunkCount = this._getChunkCount();
+        if (index < chunkCount) {
+            m_chunks.get(index).decompress(0, BLOCK_SIZE, buffer, 0);
+            return buffer;
+        }
+        return m_blocks.get(index - chunkCount);
+    }
+
+    /**
+     * Appends all of the data points in this Sequence to the target Sequence.
+     */
+    private void _appendTo(Sequence seq) 
+    {
+        int blockCount = this.getBlockCount();
+        int[] buffer = (this._getChunkCount() > 0) ? new int[BLOCK_SIZE] : null;
+        for (int i = 0; i < blockCount; i++) {
+            int numSamples = (i < (blockCount - 1)) ? BLOCK_SIZE : (BLOCK_SIZE - m_remainder);
+            seq.extend(this._getBlockData(i, buffer), 0, numSamples);
+        }
+    }
+
     /**
      * Sets the timestamp of the first data point.
      * 
@@ -105,12 +161,15 @@ extends MemberDigest
     {
         addToDigest(m_startTime);
         addToDigest(m_sampleRate);
-        int remaining = m_blocks.size();
-        for (int[] block: m_blocks) {
-            int numSamples = (--remaining > 0) ? BLOCK_SIZE : (BLOCK_SIZE - m_remainder);
-            for (int i = 0; i < numSamples; i++) {
-                addToDigest(block[i]);
-            }
+        if (m_countOnly) {
+            addToDigest(m_length);
+            return;
+        }
+        int blockCount = this.getBlockCount();
+        int[] buffer = (this._getChunkCount() > 0) ? new int[BLOCK_SIZE] : null;
+        for (int i = 0; i < blockCount; i++) {
+            int numSamples = (i < (blockCount - 1)) ? BLOCK_SIZE : (BLOCK_SIZE - m_remainder);
+            addToDigest(this._getBlockData(i, buffer), 0, numSamples);
         }
     }
 
@@ -121,6 +180,7 @@ extends MemberDigest
      */
     public void setStartTime(long startTime)
     {
+        markDigestDirty();
         m_startTime = startTime;
     }
 
@@ -132,6 +192,7 @@ extends MemberDigest
     public void setSampleRate(double sampleRate) 
     throws IllegalSampleRateException
     {
+        markDigestDirty();
         try {
             m_interval = sampleRateToInterval(sampleRate);
             m_sampleRate = sampleRate; 
@@ -150,6 +211,55 @@ extends MemberDigest
         m_startTime  = 0;
         m_sampleRate = 0.0;
         m_interval   = 0;
+        m_countOnly  = false;
+    }
+
+    /**
+     * Switches this Sequence to compressed storage, in which every full 
+     * block is held as a {@link CompressedBlock}, and only the block being
+     * filled is kept as an int array. The blocks already full are compressed
+     * now, and each later block as soon as it is full, so a long series 
+     * never needs its full uncompressed size. The data points (and digest)
+     * are unchanged, but reading them (getSeries(), copySeries())
+     * decompresses the blocks in which they lie.
+     */
+    public void compress()
+    {
+        if (m_compressed) {
+            return;
+        }
+        m_compressed = true;
+        m_chunks = new ArrayList<CompressedBlock>(m_blocks.size());
+        // Every block but the one being filled is full
+        while (m_blocks.size() > 1) {
+            m_chunks.add(new CompressedBlock(m_blocks.remove(0), 0, BLOCK_SIZE));
+        }
+    }
+
+    /**
+     * Reports whether this Sequence uses compressed storage (see compress()).
+     *
+     * @return  true if full blocks are compressed, otherwise false.
+     */
+    public boolean isCompressed()
+    {
+        return m_compressed;
+    }
+
+    /**
+     * Returns the approximate number of bytes used to store the data points.
+     *
+     * @return  The size of the (compressed and uncompressed) blocks in bytes.
+     */
+    public long getStorageSize()
+    {
+        long size = (long)m_blocks.size() * BLOCK_SIZE * 4;
+        if (m_chunks != null) {
+            for (CompressedBlock chunk: m_chunks) {
+                size += chunk.getByteCount();
+            }
+        }
+        return size;
     }
 
     /**
@@ -168,13 +278,18 @@ extends MemberDigest
            ArrayStoreException,
            NullPointerException
     {
+        markDigestDirty();
         int copySize = 0;
         while (length > 0) {
             copySize = (m_remainder > length) ? length : m_remainder;
 //System.out.format("=== Sequence.extend(): length=%d remainder=%d copySize=%d\n", length, m_remainder, copySize);
             System.arraycopy(buffer, offset, m_block, BLOCK_SIZE - m_remainder, copySize);
             if (m_remainder <= length) {
-                this._addBlock();
+                if (m_compressed) {
+                    this._compressBlock();
+                } else {
+                    this._addBlock();
+                }
             } else {
                 m_remainder -= copySize;
             }
@@ -184,6 +299,36 @@ extends MemberDigest
         }
     }
 
+    /**
+     * Extends the time-series by the specified number of data points without
+     * keeping their values. Once extended this way a Sequence only tracks 
+     * its time range and data point count, and its series is unavailable.
+     * This serves callers which only need the coverage of the data.
+     *
+     * @param   length      The number of data points to add.
+     *
+     * @throws  IllegalStateException - if this Sequence already holds data point values.
+     */
+    public void extendEmpty(int length)
+    {
+        if ((m_length > 0) && !m_countOnly) {
+            throw new IllegalStateException("Sequence already holds data point values.");
+        }
+        markDigestDirty();
+        m_countOnly = true;
+        m_length += length;
+    }
+
+    /**
+     * Reports whether this Sequence only tracks its data point count (see extendEmpty()).
+     *
+     * @return  true if the data point values are not available, otherwise false.
+     */
+    public boolean isCountOnly()
+    {
+        return m_countOnly;
+    }
+
     /**
      * Trims the sequence such that its data is within the specified time range.
      *
@@ -204,10 +349,21 @@ extends MemberDigest
             if (endTime > this.getEndTime()) {
                 endTime = this.getEndTime();
             }
+            if (m_countOnly) {
+                markDigestDirty();
+                // Keep the same points that getSeries(startTime, endTime) would return
+                int index = (int)(((startTime - m_startTime) + (m_interval / 2)) / m_interval);
+                m_length = (int)((endTime - startTime) / m_interval);
+                m_startTime += index * m_interval;
+                return;
+            }
             Sequence newSequence = new Sequence();
             newSequence.m_startTime = m_startTime;
             newSequence.m_interval = m_interval;
             newSequence.m_sampleRate = m_sampleRate;
+            if (m_compressed) {
+                newSequence.compress();
+            }
 
             try {
                 int[] series = this.getSeries(startTime, endTime);
@@ -248,29 +404,40 @@ extends MemberDigest
      * @param seq   The Sequence with which this Sequence's data will be swapped.
      */
     public void swapData(Sequence seq) {
+        this.markDigestDirty();
+        seq.markDigestDirty();
         ArrayList<int[]> tempBlocks = m_blocks;
+        ArrayList<CompressedBlock> tempChunks = m_chunks;
+        boolean tempCompressed = m_compressed;
         int[]   tempBlock      = m_block;
         int     tempLength     = m_length;
         int     tempRemainder  = m_remainder;
         long    tempStartTime  = m_startTime;
         double  tempSampleRate = m_sampleRate;
         long    tempInterval   = m_interval;
+        boolean tempCountOnly  = m_countOnly;
 
         m_blocks     = seq.m_blocks;
+        m_chunks     = seq.m_chunks;
+        m_compressed = seq.m_compressed;
         m_block      = seq.m_block;
         m_length     = seq.m_length;
         m_remainder  = seq.m_remainder;
         m_startTime  = seq.m_startTime;
         m_sampleRate = seq.m_sampleRate;
         m_interval   = seq.m_interval;
+        m_countOnly  = seq.m_countOnly;
 
         seq.m_blocks     = tempBlocks;
+        seq.m_chunks     = tempChunks;
+        seq.m_compressed = tempCompressed;
         seq.m_block      = tempBlock;
         seq.m_length     = tempLength;
         seq.m_remainder  = tempRemainder;
         seq.m_startTime  = tempStartTime;
         seq.m_sampleRate = tempSampleRate;
         seq.m_interval   = tempInterval;
+        seq.m_countOnly  = tempCountOnly;
     }
 
     /**
@@ -297,6 +464,9 @@ extends MemberDigest
         if (m_interval != seq.m_interval) {
             throw new SequenceIntervalMismatchException();
         }
+        if (m_countOnly != seq.m_countOnly) {
+            throw new IllegalStateException("Can not merge a count-only Sequence with one holding data point values.");
+        }
 
         //if ((Math.abs(m_startTime - seq.m_startTime) % m_interval) != 0) {
         //    throw new SequenceTimingException();
@@ -347,6 +517,22 @@ extends MemberDigest
             return ;
         }
 
+        if (m_countOnly) {
+            // Same as below: the target gains every point after its end
+            int length = m_length;
+            long startTime = m_startTime;
+            this._reset();
+            int skipCount = 0;
+            if (startTime <= seq.getEndTime()) {
+                skipCount = (int)((seq.getEndTime() - startTime) / m_interval + 1);
+            }
+            if (length > skipCount) {
+                seq.markDigestDirty();
+                seq.m_length += length - skipCount;
+            }
+            return;
+        }
+
         BlockPool pool = seq.m_pool;
         int[] block = null;
 
@@ -354,6 +540,7 @@ extends MemberDigest
         // so let's do it now, and keep the old data around. This should
         // prevent others from messing with it while we are working.
         ArrayList<int[]> blocks = m_blocks;
+        ArrayList<CompressedBlock> chunks = m_chunks;
         long startTime = m_startTime;
         long interval = m_interval;
         int remainder = m_remainder;
@@ -366,21 +553,25 @@ extends MemberDigest
             skipCount = (int)((seq.getEndTime() - startTime) / interval + 1);
         }
 
+        // Compressed blocks (if any) precede the uncompressed ones.
+        int chunkCount = (chunks == null) ? 0 : chunks.size();
+        int[] buffer = (chunkCount > 0) ? new int[BLOCK_SIZE] : null;
+
         // In order to ensure no data overlaps, we need to burn of full
         // blocks that are in the overlapping range. Any remaining part
         // of a block that remains will be handled in the copy logic
         // below, which takes into account the remaining skipCount value.
+        int firstBlock = 0;
         while (skipCount >= BLOCK_SIZE) {
             skipCount -= BLOCK_SIZE;
-            block = blocks.remove(0);
+            firstBlock++;
         }
 
-        int blockCount  = blocks.size();
+        int blockCount  = chunkCount + blocks.size();
         int blockOffset = 0;
         int blockLength = 0;
         int copyLength  = 0;
-        for (int i = 0; i < blockCount; i++) {
-            block = blocks.remove(0);
+        for (int i = firstBlock; i < blockCount; i++) {
             // If we end up on the last block, we need to update the block length to
             // compensate for the skipped data points, and force the copyLength
             // computation below to be updated with this information.
@@ -396,16 +587,28 @@ extends MemberDigest
             } else {
                 copyLength = blockLength;
             }
+            if (i < chunkCount) {
+                // Decompress only the data points which are appended
+                block = buffer;
+                if (copyLength > 0) {
+                    chunks.get(i).decompress(blockOffset, copyLength, block, blockOffset);
+                }
+            } else {
+                block = blocks.get(i - chunkCount);
+            }
             // Append the block's contents to the target Sequence
             if (copyLength > 0) {
                 seq.extend(block, blockOffset, copyLength);
             }
             // Add the block to the target Sequence's BlockPool after its contents have been copied.
-            try {
-                pool.addBlock(block);
-            } catch (BlockSizeMismatchException e) {
-                e.printStackTrace();
-                throw new RuntimeException("Impossible situation! BlockSizeMismatchException on BlockPool.addBlock()", e); // This should never happen
+            // A compressed target only fills one block, so it would never reuse them.
+            if ((i >= chunkCount) && !seq.m_compressed) {
+                try {
+                    pool.addBlock(block);
+                } catch (BlockSizeMismatchException e) {
+                    e.printStackTrace();
+                    throw new RuntimeException("Impossible situation! BlockSizeMismatchException on BlockPool.addBlock()", e); // This should never happen
+                }
             }
         }
     }
@@ -462,7 +665,8 @@ extends MemberDigest
     }
 
     /**
-     * Returns a reference the block at the specified index.
+     * Returns a reference the block at the specified index. If the block is
+     * compressed (see compress()), a decompressed copy is returned instead.
      *
      * @param index     The index of the desired block
      *
@@ -472,7 +676,10 @@ extends MemberDigest
     public int[] getBlock(int index) 
     throws ArrayIndexOutOfBoundsException 
     {
-        return m_blocks.get(index);
+        if (index < this._getChunkCount()) {
+            return this._getBlockData(index, new int[BLOCK_SIZE]);
+        }
+        return this._getBlockData(index, null);
     }
 
     /**
@@ -486,10 +693,10 @@ extends MemberDigest
     public int getBlockSize(int index) 
     throws ArrayIndexOutOfBoundsException 
     { 
-        if (index > m_blocks.size()) {
+        if (index > this.getBlockCount()) {
             throw new ArrayIndexOutOfBoundsException();
         }
-        return ((index <= m_blocks.size()) ? BLOCK_SIZE - m_remainder : BLOCK_SIZE); 
+        return ((index <= this.getBlockCount()) ? BLOCK_SIZE - m_remainder : BLOCK_SIZE); 
     }
 
     /**
@@ -499,7 +706,7 @@ extends MemberDigest
      */
     public int getBlockCount() 
     {
-        return m_blocks.size(); 
+        return this._getChunkCount() + m_blocks.size(); 
     }
 
     /**
@@ -524,6 +731,9 @@ extends MemberDigest
     throws IndexOutOfBoundsException,
            SequenceRangeException
     {
+        if (m_countOnly) {
+            throw new UnsupportedOperationException("The data point values of a count-only Sequence are not available.");
+        }
         if (index >= m_length) {
             throw new IndexOutOfBoundsException();
         }
@@ -535,8 +745,8 @@ extends MemberDigest
         }
 
         int[] series = new int[count];
-        int[] block = null;
-        int numBlocks = m_blocks.size();
+        int chunkCount = this._getChunkCount();
+        int numBlocks = this.getBlockCount();
         int finalBlock = numBlocks - 1;
         int seriesLength = 0;
 
@@ -545,7 +755,6 @@ extends MemberDigest
         int jump = index % blockLength; // start at this index within the first block copied
 
         for (int i=burn; (i < numBlocks) && (count > 0); i++) {
-            block = m_blocks.get(i);
             blockLength = BLOCK_SIZE - jump;
             if (i == finalBlock) {
                 blockLength = blockLength - m_remainder;
@@ -553,7 +762,11 @@ extends MemberDigest
             if (blockLength > count) {
                 blockLength = count;
             }
-            System.arraycopy(block, jump, series, seriesLength, blockLength);
+            if (i < chunkCount) {
+                m_chunks.get(i).decompress(jump, blockLength, series, seriesLength);
+            } else {
+                System.arraycopy(m_blocks.get(i - chunkCount), jump, series, seriesLength, blockLength);
+            }
             seriesLength += blockLength;
             count -= blockLength;
             jump = 0;
@@ -562,6 +775,55 @@ extends MemberDigest
         return series;
     }
 
+    /**
+     * Copies a subset of the data points in this sequence, converted to
+     * doubles, into an existing buffer. Unlike getSeries(), this does not
+     * allocate, so callers can fill a reusable buffer window by window.
+     *
+     * @param index     The index of the first copied data point.
+     * @param count     The number of data points to copy.
+     * @param buffer    The array into which the data points are copied.
+     * @param offset    The position in buffer of the first copied data point.
+     */
+    public void copySeries(int index, int count, double[] buffer, int offset)
+    throws IndexOutOfBoundsException,
+           SequenceRangeException
+    {
+        if (m_countOnly) {
+            throw new UnsupportedOperationException("The data point values of a count-only Sequence are not available.");
+        }
+        if (count <= 0) {
+            return;
+        }
+        if (index >= m_length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if ((index + count) > m_length) {
+            throw new SequenceRangeException();
+        }
+
+        int chunkCount = this._getChunkCount();
+        int burn = index / BLOCK_SIZE;
+        int jump = index % BLOCK_SIZE;
+        for (int i=burn; count > 0; i++) {
+            int blockLength = BLOCK_SIZE - jump;
+            if (blockLength > count) {
+                blockLength = count;
+            }
+            if (i < chunkCount) {
+                m_chunks.get(i).decompress(jump, blockLength, buffer, offset);
+                offset += blockLength;
+            } else {
+                int[] block = m_blocks.get(i - chunkCount);
+                for (int j=0; j < blockLength; j++) {
+                    buffer[offset++] = (double)block[jump + j];
+                }
+            }
+            count -= blockLength;
+            jump = 0;
+        }
+    }
+
     /**
      * Returns a new Array containing all of the data points in this sequence.
      *
@@ -848,11 +1110,7 @@ extends MemberDigest
                     collapsed = (Sequence)sequence.clone();
                 }
                 //append newSeq to collapsed
-                int remaining = source.m_blocks.size();
-                for (int[] block: source.m_blocks) {
-                    int numSamples = (--remaining > 0) ? BLOCK_SIZE : (BLOCK_SIZE - source.m_remainder);
-                    collapsed.extend(block, 0, numSamples);
-                }
+                source._appendTo(collapsed);
             }
         }
         return collapsed;
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2012, United States Geological Survey or
+ * third-party contributors as indicated by the @author tags.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/  >.
+ *
+ */
+package freq;
+
+import java.util.Hashtable;
+
+/**
+ * Radix-2 Fast Fourier Transform on primitive arrays.
+ *
+ * Unlike Cmplx.fft2() / Cmplx.fftInverse(), no object is created per
+ * frequency: spectra are held in split real/imaginary double[] arrays
+ * supplied by the caller. The bit-reversal and twiddle tables for each
+ * size are built once and shared (see getInstance()), and a plan holds no
+ * mutable state, so one plan may be used by several threads at once.
+ *
+ * The sign conventions match Cmplx.four1(): the forward transform is
+ * X[k] = sum x[j] exp(+2 pi i jk/n), and the inverse uses exp(-2 pi i jk/n)
+ * and divides by n.
+ *
+ * realForward() returns the nf = n/2 + 1 non-negative frequencies
+ * (DC, df, ..., Nyquist) of a real series, as Cmplx.fft2() does, using a
+ * transform of half the size. realInverse() is its inverse.
+ */
+public class FFT {
+
+    private static final Hashtable<Integer, FFT> plans = new Hashtable<Integer, FFT>();
+
+    private final int n;
+    private final int[] bitReverse;
+    private final double[] cos; // cos(2 pi k/n), k < n/2
+    private final double[] sin; // sin(2 pi k/n), k < n/2
+    private final FFT half;     // the n/2 plan used by the real transforms
+
+    /**
+     * Returns the (shared) plan for n-point transforms.
+     *
+     * @param n The transform size, which must be a power of 2.
+     */
+    public static FFT getInstance(int n) {
+        if(n < 1 || (n & (n - 1)) != 0) {
+            throw new IllegalArgumentException("FFT size must be a power of 2: " + n);
+        }
+        synchronized(plans) {
+            FFT plan = plans.get(n);
+            if(plan == null) {
+                plan = new FFT(n);
+                plans.put(n, plan);
+            }
+            return plan;
+        }
+    }
+
+    /**
+     * Returns the smallest power of 2 >= n.
+     */
+    public static int nextPowerOf2(int n) {
+        int nfft = 1;
+        while(nfft < n)
+            nfft <<= 1;
+        return nfft;
+    }
+
+    private FFT(int n) {
+        this.n = n;
+        bitReverse = new int[n];
+        int bits = Integer.numberOfTrailingZeros(n);
+        for(int i = 0; i < n; i++) {
+            bitReverse[i] = (bits == 0) ? 0 : Integer.reverse(i) >>> (32 - bits);
+        }
+        cos = new double[Math.max(1, n / 2)];
+        sin = new double[Math.max(1, n / 2)];
+        for(int k = 0; k < n / 2; k++) {
+            double theta = 2.0 * Math.PI * k / n;
+            cos[k] = Math.cos(theta);
+            sin[k] = Math.sin(theta);
+        }
+        half = (n > 1) ? getInstance(n / 2) : null;
+    }
+
+    public int getSize() {
+        return n;
+    }
+
+    /** Forward transform of the n complex values in re[], im[], in place. */
+    public void forward(double[] re, double[] im) {
+        transform(re, im, 1);
+    }
+
+    /** Inverse transform (including the 1/n scaling) of re[], im[], in place. */
+    public void inverse(double[] re, double[] im) {
+        transform(re, im, -1);
+        double scale = 1.0 / n;
+        for(int i = 0; i < n; i++) {
+            re[i] *= scale;
+            im[i] *= scale;
+        }
+    }
+
+    private void transform(double[] re, double[] im, int isign) {
+        double temp;
+        for(int i = 0; i < n; i++) {
+            int j = bitReverse[i];
+            if(j > i) {
+                temp = re[i];
+                re[i] = re[j];
+                re[j] = temp;
+                temp = im[i];
+                im[i] = im[j];
+                im[j] = temp;
+            }
+        }
+        for(int size = 2; size <= n; size <<= 1) {
+            int halfSize = size >> 1;
+            int step = n / size;
+            for(int k = 0; k < halfSize; k++) {
+                double wr = cos[k * step];
+                double wi = isign * sin[k * step];
+                for(int i = k; i < n; i += size) {
+                    int j = i + halfSize;
+                    double tempr = wr * re[j] - wi * im[j];
+                    double tempi = wr * im[j] + wi * re[j];
+                    re[j] = re[i] - tempr;
+                    im[j] = im[i] - tempi;
+                    re[i] += tempr;
+                    im[i] += tempi;
+                }
+            }
+        }
+    }
+
+    /**
+     * Forward transform of a real series, zero padded to n points.
+     *
+     * @param x     The series; only x[0 .. count-1] is read.
+     * @param count The number of points to read from x (<= n).
+     * @param re    Receives the real parts of the n/2 + 1 frequencies.
+     * @param im    Receives the imaginary parts of the n/2 + 1 frequencies.
+     */
+    public void realForward(double[] x, int count, double[] re, double[] im) {
+        if(count > n) {
+            throw new IllegalArgumentException("Series length " + count + " exceeds the FFT size " + n);
+        }
+        if(n == 1) {
+            re[0] = (count > 0) ? x[0] : 0.0;
+            im[0] = 0.0;
+            return;
+        }
+        int nh = n / 2;
+        // Pack the even samples into the real parts, the odd ones into the imaginary parts
+        for(int j = 0; j < nh; j++) {
+            re[j] = (2 * j < count) ? x[2 * j] : 0.0;
+            im[j] = (2 * j + 1 < count) ? x[2 * j + 1] : 0.0;
+        }
+        half.forward(re, im);
+
+        // Separate the transforms of the even (E) and odd (O) samples:
+        //   X[k] = E[k] + W^k O[k],  X[nh-k] = conj(E[k] - W^k O[k])
+        double z0r = re[0];
+        double z0i = im[0];
+        re[0] = z0r + z0i;
+        im[0] = 0.0;
+        re[nh] = z0r - z0i;
+        im[nh] = 0.0;
+        for(int k = 1; k <= nh / 2; k++) {
+            int m = nh - k;
+            double a = re[k], b = im[k];
+            double c = re[m], d = im[m];
+            double er = 0.5 * (a + c);
+            double ei = 0.5 * (b - d);
+            double or = 0.5 * (b + d);
+            double oi = 0.5 * (c - a);
+            double wr = cos[k];
+            double wi = sin[k];
+            double tr = wr * or - wi * oi;
+            double ti = wr * oi + wi * or;
+            re[k] = er + tr;
+            im[k] = ei + ti;
+            if(m != k) {
+                re[m] = er - tr;
+                im[m] = ti - ei;
+            }
+        }
+    }
+
+    /**
+     * Inverse of realForward(): the real series whose n/2 + 1 non-negative
+     * frequencies are re[], im[] (the negative ones being their conjugates).
+     * re[] and im[] are overwritten.
+     *
+     * @param x     Receives the first count points of the series.
+     * @param count The number of points to return (<= n).
+     */
+    public void realInverse(double[] re, double[] im, double[] x, int count) {
+        if(count > n) {
+            throw new IllegalArgumentException("Series length " + count + " exceeds the FFT size " + n);
+        }
+        if(n == 1) {
+            if(count > 0)
+                x[0] = re[0];
+            return;
+        }
+        int nh = n / 2;
+
+        // Rebuild Z = E + iO, the transform of the packed even/odd samples
+        double er = 0.5 * (re[0] + re[nh]);
+        double ei = 0.5 * (im[0] - im[nh]);
+        double or = 0.5 * (re[0] - re[nh]);
+        double oi = 0.5 * (im[0] + im[nh]);
+        re[0] = er - oi;
+        im[0] = ei + or;
+        for(int k = 1; k <= nh / 2; k++) {
+            int m = nh - k;
+            double a = re[k], b = im[k];
+            double c = re[m], d = im[m];
+            er = 0.5 * (a + c);
+            ei = 0.5 * (b - d);
+            double p = 0.5 * (a - c);
+            double q = 0.5 * (b + d);
+            double wr = cos[k];
+            double wi = sin[k];
+            or = p * wr + q * wi;
+            oi = q * wr - p * wi;
+            re[k] = er - oi;
+            im[k] = ei + or;
+            if(m != k) {
+                re[m] = er + oi;
+                im[m] = or - ei;
+            }
+        }
+        half.inverse(re, im);
+
+        for(int j = 0; j < nh; j++) {
+            if(2 * j < count)
+                x[2 * j] = re[j];
+            if(2 * j + 1 < count)
+                x[2 * j + 1] = im[j];
+        }
+    }
+}
@@ -1373,34 +1373,40 @@ System.out.format("== MiniSeed: process blockette 320\n");
     }
   }
   public int [] decomp() throws SteimException {
+    return decomp(SteimDecoder.getInstance());
+  }
+  /** Decompress the data section using the given decoder.  The frames are decoded in place and any
+   * reverse integration or sample count error is taken from this decode only, so records may be
+   * decompressed concurrently as long as each thread uses its own decoder.
+   *@param decoder The decoder to use, this must not be shared with another thread
+   *@return The samples, or null if the encoding is not Steim1/2 or the decode had an error
+   *@throws SteimException if the frames can not be decoded
+   */
+  public int [] decomp(SteimDecoder decoder) throws SteimException {
     int rev=0;
-    byte [] frames = new byte[getBlockSize()-dataOffset];
-    System.arraycopy(buf,dataOffset, frames,0,getBlockSize()-dataOffset); 
-    int [] samples=null;
-    if(getEncoding() == 10) samples = Steim1.decode(frames, getNsamp(), swap, rev);
-    if(getEncoding() == 11) samples = Steim2.decode(frames, getNsamp(), swap, rev);
+    SteimResult result = decoder.decode(getEncoding(), buf, dataOffset, getBlockSize()-dataOffset,
+        getNsamp(), swap, rev);
+    if(result == null) return null;
 
     // Would adding this block "as is" cause a reverse constant error (or steim error)?  If so, restore block
     // to state before adding this one, write it out, and make this block the beginning of next output block
-    if(Steim2.hadReverseError() || Steim2.hadSampleCountError()) {
-      if(Steim2.hadReverseError()) Util.prta("Decomp  "+Steim2.getReverseError()+" "+toString());
-      if(Steim2.hadSampleCountError()) Util.prta("decomp "+Steim2.getSampleCountError()+" "+toString());
+    if(result.hadError()) {
+      if(result.hadReverseError()) Util.prta("Decomp  "+result.getReverseError()+" "+toString());
+      if(result.hadSampleCountError()) Util.prta("decomp "+result.getSampleCountError()+" "+toString());
       return null;
     }
-    return samples;
+    return result.getSamples();
   }
   public void fixReverseIntegration() {
    try {
-      byte [] frames = new byte[getBlockSize()-dataOffset];
-      System.arraycopy(buf,dataOffset, frames,0,getBlockSize()-dataOffset); 
-      int [] samples=null;
       int rev=0;
-      if(getEncoding() == 10) samples = Steim1.decode(frames, getNsamp(), swap, rev);
-      if(getEncoding() == 11) samples = Steim2.decode(frames, getNsamp(), swap, rev);
+      SteimResult result = SteimDecoder.getInstance().decode(getEncoding(), buf, dataOffset,
+          getBlockSize()-dataOffset, getNsamp(), swap, rev);
+      int [] samples = (result == null? null: result.getSamples());
 
       // Would adding this block "as is" cause a reverse constant error (or steim error)?  If so, set reverse
       // integration constant from the decompressed dta.
-      if(Steim2.hadReverseError()) {
+      if(result != null && result.hadReverseError()) {
 
         ms.position(dataOffset+4);            // position forward integration constant
         //Util.prt("FixReverseIntegration: fwd="+forward+" "+samples[0]+" rev="+reverse+" "+samples[samples.length-1]);
@@ -1561,15 +1567,13 @@ System.out.format("== MiniSeed: process blockette 320\n");
     try {
       Util.prt("toMS512 decomp/comp method input="+toString().substring(0,60));
       int rev=0;
-      byte [] frames = new byte[getBlockSize()-dataOffset];
-      System.arraycopy(buf,dataOffset, frames,0,getBlockSize()-dataOffset);
-      int [] samples=null;
-      if(getEncoding() == 10) samples = Steim1.decode(frames, getNsamp(), swap, rev);
-      if(getEncoding() == 11) samples = Steim2.decode(frames, getNsamp(), swap, rev);
+      SteimResult result = SteimDecoder.getInstance().decode(getEncoding(), buf, dataOffset,
+          getBlockSize()-dataOffset, getNsamp(), swap, rev);
+      int [] samples = (result == null? null: result.getSamples());
 
-      if(Steim2.hadReverseError() || Steim2.hadSampleCountError()) {
-        if(Steim2.hadReverseError()) Util.prta("make512()  "+Steim2.getReverseError());
-        if(Steim2.hadSampleCountError()) Util.prta("make512() "+Steim2.getSampleCountError());
+      if(result != null && result.hadError()) {
+        if(result.hadReverseError()) Util.prta("make512()  "+result.getReverseError());
+        if(result.hadSampleCountError()) Util.prta("make512() "+result.getSampleCountError());
       }
 
       // we now need to recompress the samples, we need to use a putbuf of our own.
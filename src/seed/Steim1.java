@@ -65,16 +65,26 @@ public class Steim1 {
 	 *  bytes.
 	 */
 	public static int[] decode(byte[] b, int numSamples, boolean swapBytes, int bias) throws SteimException {
+		return decode(b, 0, b.length, numSamples, swapBytes, bias);
+	}
+
+	/**
+	 *  Decode the frames held in <b>length</b> bytes of <b>b</b> starting at
+	 *  <b>offset</b>, without copying them out first.  Steim1 keeps no state
+	 *  between calls, so this is safe to call from several threads at once.
+	 *  @see #decode(byte[],int,boolean,int)
+	 */
+	public static int[] decode(byte[] b, int offset, int length, int numSamples, boolean swapBytes, int bias) throws SteimException {
 		// Decode Steim1 compression format from the provided byte array, which contains numSamples number
 		// of samples.  swapBytes is set to true if the value words are to be byte swapped.  bias represents
 		// a previous value which acts as a starting constant for continuing differences integration.  At the
 		// very start, bias is set to 0.
-		if (b.length % 64 != 0) {
-			throw new SteimException("encoded data length is not multiple of 64 bytes (" + b.length + ")"); 
+		if (length % 64 != 0) {
+			throw new SteimException("encoded data length is not multiple of 64 bytes (" + length + ")"); 
 		}
 		int[] samples = new int[numSamples];
 		int[] tempSamples;
-		int numFrames = b.length / 64;
+		int numFrames = length / 64;
 		int current = 0;
 		int start=0, end;
 		int firstData=0;
@@ -83,7 +93,7 @@ public class Steim1 {
 		//System.err.println("DEBUG: number of samples: " + numSamples + ", number of frames: " + numFrames + ", byte array size: " + b.length);
 		for (int i=0; i< numFrames; i++ ) {
 			//System.err.println("DEBUG: start of frame " + i);
-			tempSamples = extractSamples(b, i*64, swapBytes);   // returns only differences except for frame 0
+			tempSamples = extractSamples(b, offset + i*64, i == 0, swapBytes);   // returns only differences except for frame 0
 			firstData = 0; // d(0) is byte 0 by default
 			if (i==0) {   // special case for first frame
 				lastValue = bias; // assign our X(-1)
@@ -270,6 +280,13 @@ public class Steim1 {
 	protected static int[] extractSamples(byte[] bytes,
 			int offset, 
 			boolean swapBytes) {
+		return extractSamples(bytes, offset, offset == 0, swapBytes);
+	}
+
+	private static int[] extractSamples(byte[] bytes,
+			int offset,
+			boolean firstFrame,
+			boolean swapBytes) {
 		/* get nibbles */
 		int nibbles = Utility.bytesToInt(bytes[offset], 
 				bytes[offset+1], 
@@ -294,8 +311,8 @@ public class Steim1 {
 			switch (currNibble) {
 				case 0:
 					//System.out.println("0 means header info");
-					// only include header info if offset is 0
-					if (offset == 0) {
+					// only include header info for the first frame
+					if (firstFrame) {
 						temp[currNum++] = Utility.bytesToInt(bytes[offset+(i*4)], 
 								bytes[offset+(i*4)+1],
 								bytes[offset+(i*4)+2],
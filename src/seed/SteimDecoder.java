@@ -0,0 +1,283 @@
+/*
+ * Copyright 2012, United States Geological Survey or
+ * third-party contributors as indicated by the @author tags.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/  >.
+ *
+ */
+
+package seed;
+
+/**
+ *  Reentrant decoder for Steim1 and Steim2 compressed data sections.
+ * <p>
+ *  All of the per-decode state that used to live in static fields of Steim2
+ *  (the X(-1) constant, the per-frame sample counts and integration constants,
+ *  the error strings) lives in the instance, and every decode hands its errors
+ *  back in a SteimResult. A SteimDecoder is not itself synchronized, so give
+ *  each thread its own instance - getInstance() returns one confined to the
+ *  calling thread.
+ * <p>
+ *  The frames are read in place from the supplied buffer (offset/length), so a
+ *  MiniSeed record does not have to copy its data section before decoding.
+ */
+public class SteimDecoder {
+  private static final ThreadLocal<SteimDecoder> threadDecoder = new ThreadLocal<SteimDecoder>() {
+    protected SteimDecoder initialValue() {return new SteimDecoder();}
+  };
+
+  private int xminus1;
+  private boolean dbg;
+  private String reverseError;
+  private String sampleCountError;
+  private int [] frameNsamp = new int[64];
+  private int [] frameReverse = new int[64];
+  private int [] frameForward = new int[64];
+  private StringBuffer sb;
+
+  /** @return the decoder confined to the calling thread */
+  public static SteimDecoder getInstance() {return threadDecoder.get();}
+
+  public void setDebug(boolean t) {dbg=t;}
+  public String getDebugString() {return (sb == null? "": sb.toString());}
+  /** @return X(-1) as used by the last Steim2 decode */
+  public int getXminus1() {return xminus1;}
+  /** @return the number of samples in each frame of the last Steim2 decode */
+  public int [] getFrameNsamp() {return frameNsamp;}
+  /** @return the reverse integration constant for each frame of the last Steim2 decode */
+  public int [] getFrameReverse() {return frameReverse;}
+  /** @return the forward integration constant for each frame of the last Steim2 decode */
+  public int [] getFrameForward() {return frameForward;}
+  /** @return the reverse integration error of the last decode, null if none */
+  String getLastReverseError() {return reverseError;}
+  /** @return the sample count error of the last decode, null if none */
+  String getLastSampleCountError() {return sampleCountError;}
+
+  /**
+   *  Decode a data section according to its SEED encoding format.
+   *  @param encoding the Blockette 1000 encoding (10=Steim1, 11=Steim2)
+   *  @param b buffer holding the compressed frames
+   *  @param offset index of the first frame in <b>b</b>
+   *  @param length number of bytes of frames (a multiple of 64)
+   *  @param numSamples the number of samples expected
+   *  @param swapBytes if true the frames are little endian
+   *  @param bias X(-1) carried over from a previous record, or 0
+   *  @return the decoded samples and any non-fatal errors, or null if the encoding is not Steim1/Steim2
+   *  @throws SteimException if the frames can not be decoded
+   */
+  public SteimResult decode(int encoding, byte [] b, int offset, int length, int numSamples,
+      boolean swapBytes, int bias) throws SteimException {
+    if(encoding == 10) {
+      reverseError=null;
+      sampleCountError=null;
+      return new SteimResult(Steim1.decode(b, offset, length, numSamples, swapBytes, bias), null, null);
+    }
+    if(encoding == 11) return decodeSteim2(b, offset, length, numSamples, swapBytes, bias);
+    return null;
+  }
+
+  /**
+   *  Decode Steim2 frames. See Steim2.decode(byte[],int,boolean,int) for the
+   *  meaning of the arguments; <b>offset</b> and <b>length</b> select the frames within <b>b</b>.
+   */
+  public SteimResult decodeSteim2(byte [] b, int offset, int length, int numSamples,
+      boolean swapBytes, int bias) throws SteimException {
+    if (length % 64 != 0) {
+      throw new SteimException("encoded data length is not multiple of 64 bytes (" + length + ")");
+    }
+    for(int i=0; i<frameNsamp.length; i++) {frameReverse[i]=2147000000; frameNsamp[i] = 0;frameForward[i]=-2147000000;}
+    reverseError=null;
+    sampleCountError=null;
+    int[] samples = new int[numSamples];
+    if(numSamples == 0) return new SteimResult(samples, null, null);
+    int[] tempSamples;
+    int numFrames = length / 64;
+    if(numFrames < 1 || numFrames > 64) throw new SteimException("# frames unknown = "+numFrames);
+    int current = 0;
+    int start=0, end=0;
+    int firstData=0;
+    int lastValue = 0;
+
+    if(dbg ){
+      if(sb == null) sb=new StringBuffer(10000);
+      else sb.delete(0,  sb.length()-1);
+    }
+    int lastCurrent=0;
+    for (int i=0; i< numFrames; i++ ) {
+      tempSamples = extractSteim2Samples(b, offset + i*64, i == 0, swapBytes);   // returns only differences except for frame 0
+      firstData = 0; // d(0) is byte 0 by default
+      if (i==0) {   // special case for first frame
+        lastValue = bias; // assign our X(-1)
+        xminus1=lastValue;
+        // x0 and xn are in 1 and 2 spots
+        start = tempSamples[1];  // X(0) is byte 1 for frame 0
+        end = tempSamples[2];    // X(n) is byte 2 for frame 0
+        firstData = 3; // d(0) is byte 3 for frame 0
+        // if bias was zero, then we want the first sample to be X(0) constant
+        if(tempSamples.length < 4)
+          Util.prt("   **** Bad tempsamples (<3) in first frame!="+tempSamples.length);
+        else if (bias == 0) {
+          lastValue = start - tempSamples[3];  // X(-1) = X(0) - d(0)
+          xminus1 = lastValue;
+        }
+      }
+      for (int j = firstData; j < tempSamples.length && current < numSamples; j++) {
+        samples[current] = lastValue + tempSamples[j];  // X(n) = X(n-1) + d(n)
+        lastValue = samples[current];
+        current++;
+      }
+      if(i == 0) frameNsamp[i] = current;
+      else frameNsamp[i] = current - lastCurrent;   // number of samples in this frame
+      if(current > 0) frameReverse[i] = samples[current-1];
+      frameForward[i] = samples[lastCurrent];
+      lastCurrent = current;
+      if(current >= numSamples) break;                // no need to process the empty frames
+    }  // end for each frame...
+    if(current <= 0) {
+      throw new SteimException("Steim2 found no samples in block");
+    }
+    if(samples[current-1] != end && (end != 0 || Steim2.strictRIC)) {       // if end is zero, presume it was never set and hence is not an error
+      reverseError="Steim2 reverse integration error is="+samples[current-1]+"!="+end+" expected at "+(current-1);
+      if(Steim2.traceBackErrors)
+        new RuntimeException("Steim2 rev int err (non-fatal) is="+samples[current-1]+"!="+end+" rev constant").printStackTrace();
+    }
+    if(current != numSamples) {
+      sampleCountError="Steim2 sample count error got "+current+" expected "+numSamples;
+      if(Steim2.traceBackErrors)
+        new RuntimeException("Steim2 sample Count err (non-fatal) is="+current+" expected"+numSamples).printStackTrace();
+    }
+    return new SteimResult(samples, reverseError, sampleCountError);
+  }
+
+  /**
+   *  Extract the differences (and, for the first frame, the integration
+   *  constants) from the 64 byte Steim2 frame starting at <b>offset</b>.
+   */
+  private int[] extractSteim2Samples(byte[] bytes, int offset, boolean firstFrame, boolean swapBytes) {
+    /* get nibbles */
+    int nibbles = Utility.bytesToInt(bytes[offset],
+        bytes[offset+1],
+        bytes[offset+2],
+        bytes[offset+3],
+        swapBytes);
+    int currNibble = 0;
+    if(dbg) sb.append("Key="+Integer.toHexString(nibbles)+"\n");
+    int dnib = 0;
+    int[] temp = new int[106]; // 7 samples * 15 long words + 1 nibble int
+    int tempInt;
+    int currNum = 0;
+    for (int i=0; i<16; i++) {
+      currNibble = (nibbles >> (30 - i*2 ) ) & 0x03;
+      switch (currNibble) {
+        case 0:
+          // only include header info if this is the first frame and in first 3 words (forward and rev constant)
+          if (firstFrame && currNum <= 3) {
+            temp[currNum++] = Utility.bytesToInt(bytes[offset+(i*4)],
+                bytes[offset+(i*4)+1],
+                bytes[offset+(i*4)+2],
+                bytes[offset+(i*4)+3],
+                swapBytes);
+            if(dbg) sb.append("Word "+i+" is hdr "+Integer.toHexString(temp[currNum-1])+"\n");
+          }
+          break;
+        case 1:
+          // 1 means 4 one byte differences
+          temp[currNum++] = Utility.bytesToInt(bytes[offset+(i*4)]);
+          temp[currNum++] = Utility.bytesToInt(bytes[offset+(i*4)+1]);
+          temp[currNum++] = Utility.bytesToInt(bytes[offset+(i*4)+2]);
+          temp[currNum++] = Utility.bytesToInt(bytes[offset+(i*4)+3]);
+          if(dbg) sb.append("Word "+i+" is 8 byte ns="+(currNum-4)+"diff="+bytes[offset+(i*4)]+" "+
+              bytes[offset+(i*4)+1]+" "+
+              bytes[offset+(i*4)+2]+" "+bytes[offset+(i*4)+3]+" val="+temp[currNum-4]+" "+
+              temp[currNum-3]+" "+temp[currNum-2]+" "+temp[currNum-1]+"\n");
+          break;
+        case 2:
+          tempInt = Utility.bytesToInt(bytes[offset+(i*4)],
+              bytes[offset+(i*4)+1],
+              bytes[offset+(i*4)+2],
+              bytes[offset+(i*4)+3],
+              swapBytes);
+          dnib = (tempInt >> 30) & 0x03;
+          switch (dnib) {
+            case 1:
+              // 2,1 means 1 thirty bit difference
+              temp[currNum++] = (tempInt << 2) >> 2;
+              if(dbg) sb.append("Word "+i+" is 02 dnib="+dnib+" ns="+(currNum-1)+"diff(30 bit)="+temp[currNum-1]+"\n");
+              break;
+            case 2:
+              // 2,2 means 2 fifteen bit differences
+              temp[currNum++] = (tempInt << 2) >> 17;  // d0
+              temp[currNum++] = (tempInt << 17) >> 17; // d1
+              if(dbg) sb.append("Word "+i+" is 02 dnib="+dnib+" ns="+(currNum-2)+"diff(15 bit)="+temp[currNum-2]+
+                  " "+temp[currNum-1]+"\n");
+              break;
+            case 3:
+              // 2,3 means 3 ten bit differences
+              temp[currNum++] = (tempInt << 2) >> 22;  // d0
+              temp[currNum++] = (tempInt << 12) >> 22; // d1
+              temp[currNum++] = (tempInt << 22) >> 22; // d2
+              if(dbg) sb.append("Word "+i+" is 02 dnib="+dnib+" ns="+(currNum-3)+"diff(10 bit)="+temp[currNum-3]+
+                  " "+temp[currNum-2]+" "+temp[currNum-1]+"\n");
+              break;
+            default:
+          }
+          break;
+        case 3:
+          tempInt = Utility.bytesToInt(bytes[offset+(i*4)],
+              bytes[offset+(i*4)+1],
+              bytes[offset+(i*4)+2],
+              bytes[offset+(i*4)+3],
+              swapBytes);
+          dnib = (tempInt >> 30) & 0x03;
+          int diffCount = 0;  // number of differences
+          int bitSize = 0;    // bit size
+          int headerSize = 0; // number of header/unused bits at top
+          switch (dnib) {
+            case 0:
+              // 3,0 means 5 six bit differences
+              headerSize = 2;
+              diffCount = 5;
+              bitSize = 6;
+              break;
+            case 1:
+              // 3,1 means 6 five bit differences
+              headerSize = 2;
+              diffCount = 6;
+              bitSize = 5;
+              break;
+            case 2:
+              // 3,2 means 7 four bit differences, with 2 unused bits
+              headerSize = 4;
+              diffCount = 7;
+              bitSize = 4;
+              break;
+            default:
+          }
+          if (diffCount > 0) {
+            for (int d=0; d<diffCount; d++) {
+              temp[currNum++] = ( tempInt << (headerSize+(d*bitSize)) ) >> (((diffCount-1)*bitSize) + headerSize);
+            }
+            if(dbg) {
+              String s ="Word "+i+" is 03 dnib="+dnib+" ns="+(currNum-4)+" diff("+bitSize+" bit)=";
+              for(int ii=0; ii<diffCount; ii++) s = s + temp[currNum+ii-diffCount]+" ";
+              sb.append(s+"\n");
+            }
+          }
+      }
+    }
+    int[] out = new int[currNum];
+    System.arraycopy(temp, 0, out, 0, currNum);
+    return out;
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2012, United States Geological Survey or
+ * third-party contributors as indicated by the @author tags.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/  >.
+ *
+ */
+
+package seed;
+
+/**
+ *  The outcome of decoding one Steim compressed data section: the samples
+ *  together with the (non-fatal) reverse integration and sample count errors
+ *  found while decoding them.
+ *
+ *  Unlike the static Steim2.hadReverseError() family, the error state here
+ *  belongs to this result only, so it can not be overwritten by a decode
+ *  running in another thread.
+ */
+public class SteimResult {
+  private int [] samples;
+  private String reverseError;
+  private String sampleCountError;
+
+  public SteimResult(int [] samples, String reverseError, String sampleCountError) {
+    this.samples = samples;
+    this.reverseError = reverseError;
+    this.sampleCountError = sampleCountError;
+  }
+  /** @return the decoded samples */
+  public int [] getSamples() {return samples;}
+  /** @return true if the decode had a reverse integration error */
+  public boolean hadReverseError() {return (reverseError != null);}
+  /** @return text describing the reverse integration error, "" if none */
+  public String getReverseError() {return (reverseError == null? "": reverseError);}
+  /** @return true if the number of samples decoded was not the number expected */
+  public boolean hadSampleCountError() {return (sampleCountError != null);}
+  /** @return text describing the sample count error, "" if none */
+  public String getSampleCountError() {return (sampleCountError == null? "": sampleCountError);}
+  /** @return true if either a reverse integration or a sample count error was found */
+  public boolean hadError() {return hadReverseError() || hadSampleCountError();}
+}